@@ -0,0 +1,118 @@
+package org.wep.benchmarks;
+
+import org.wep.utils.BeanUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BeanUtils 的json读写和bean复制, 按列表长度参数化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanUtilsBenchmark {
+    @Param({"1", "100", "1000"})
+    private int items;
+    private Payload payload;
+    private String json;
+    private Payload target;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        payload = new Payload();
+        payload.setName("payload");
+        payload.setCount(items);
+        List<Item> list = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            Item item = new Item();
+            item.setId(i);
+            item.setName("item" + i);
+            item.setPrice(i * 1.5);
+            list.add(item);
+        }
+        payload.setItems(list);
+        json = BeanUtils.toJson(payload);
+        target = new Payload();
+    }
+
+    @Benchmark
+    public Payload toBean() {
+        return BeanUtils.toBean(json, Payload.class);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return BeanUtils.toJson(payload);
+    }
+
+    @Benchmark
+    public Payload copy() {
+        return BeanUtils.copy(payload, target);
+    }
+
+    public static class Payload {
+        private String name;
+        private int count;
+        private List<Item> items;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public List<Item> getItems() {
+            return items;
+        }
+
+        public void setItems(List<Item> items) {
+            this.items = items;
+        }
+    }
+
+    public static class Item {
+        private long id;
+        private String name;
+        private double price;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public void setPrice(double price) {
+            this.price = price;
+        }
+    }
+}
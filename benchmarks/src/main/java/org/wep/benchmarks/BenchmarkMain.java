@@ -0,0 +1,47 @@
+package org.wep.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * 与 org.openjdk.jmh.Main 的参数相同, 没有指定 -rf/-rff 时把结果写到 jmh-result-{版本}.json, 方便不同版本之间比较
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp()) {
+            cli.showHelp();
+            return;
+        }
+        Runner lister = new Runner(cli);
+        if (cli.shouldList()) {
+            lister.list();
+            return;
+        }
+        if (cli.shouldListWithParams()) {
+            lister.listWithParams(cli);
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+        if (!cli.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            options.result(String.format("jmh-result-%s.json", version()));
+        }
+        new Runner(options.build()).run();
+    }
+
+    static String version() {
+        String version = BenchmarkMain.class.getPackage().getImplementationVersion();
+        return version == null ? "dev" : version;
+    }
+}
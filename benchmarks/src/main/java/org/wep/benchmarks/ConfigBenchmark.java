@@ -0,0 +1,80 @@
+package org.wep.benchmarks;
+
+import org.wep.plugins.ConfigProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件配置文件的占位符替换: 命中缓存、Environment 变化后重新替换、重新读文件, 以及单个占位符
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+    @Param({"10", "1000"})
+    private int keys;
+    private PluginFixture fixture;
+    private ConfigProcessor processor;
+    private File configFile;
+    private String[] properties;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixture = PluginFixture.start(Collections.emptyList());
+        Map<String, Object> values = new HashMap<>();
+        StringBuilder yaml = new StringBuilder();
+        properties = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            values.put("bench.value" + i, "v" + i);
+            // 一半的值带占位符
+            String value = i % 2 == 0 ? "prefix-${bench.value" + i + "}" : "plain" + i;
+            yaml.append("key").append(i).append(": \"").append(value).append("\"\n");
+            properties[i] = value;
+        }
+        fixture.getContext().getEnvironment().getPropertySources().addFirst(new MapPropertySource("bench", values));
+        configFile = Files.createTempFile("wep-bench-config", ".yml").toFile();
+        Files.write(configFile.toPath(), yaml.toString().getBytes(StandardCharsets.UTF_8));
+        processor = fixture.getPluginApplication().getConfigProcessor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+        Files.deleteIfExists(configFile.toPath());
+    }
+
+    @Benchmark
+    public Map<String, Object> resolveEnvCached() {
+        return processor.resolveEnv(configFile);
+    }
+
+    @Benchmark
+    public Map<String, Object> resolveEnvAfterEnvironmentChange() {
+        processor.refreshEnvironment();
+        return processor.resolveEnv(configFile);
+    }
+
+    @Benchmark
+    public Map<String, Object> resolveEnvCold() {
+        processor.evict(configFile);
+        return processor.resolveEnv(configFile);
+    }
+
+    @Benchmark
+    public String resolveProperty() {
+        return processor.resolveProperty(properties[next++ % properties.length]);
+    }
+}
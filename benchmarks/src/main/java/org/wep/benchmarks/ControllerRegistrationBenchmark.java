@@ -0,0 +1,94 @@
+package org.wep.benchmarks;
+
+import org.wep.plugins.ControllerBeanDefinition;
+import org.wep.plugins.ControllerProcessor;
+import org.wep.plugins.PluginApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在已有大量路由的宿主 handler mapping 上注册/注销一个插件的全部controller
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerRegistrationBenchmark {
+    @Param({"1000", "10000"})
+    private int hostRoutes;
+    @Param({"10", "100"})
+    private int pluginRoutes;
+    @Param({"false", "true"})
+    private boolean dedicatedHandlerMapping;
+    private PluginFixture fixture;
+    private Map<ControllerBeanDefinition, Object> controllers;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<SyntheticPlugin> list = new ArrayList<>();
+        // 其他插件的路由也在注册表中
+        for (int i = 0; i < 4; i++) {
+            list.add(new SyntheticPlugin("routes-" + i).controllers(pluginRoutes / 10, 10));
+        }
+        fixture = PluginFixture.start(list, p -> p.setDedicatedHandlerMapping(dedicatedHandlerMapping));
+        RequestMappingHandlerMapping mapping = fixture.getHandlerMapping();
+        Method method = HostController.class.getMethod("handle");
+        HostController host = new HostController();
+        for (int i = 0; i < hostRoutes; i++) {
+            mapping.registerMapping(RequestMappingInfo.paths("/host/" + i).build(), host, method);
+        }
+        PluginApplication pluginApplication = fixture.getPluginApplication();
+        Map<ControllerBeanDefinition, Object> all = new LinkedHashMap<>();
+        pluginApplication.getBeansWithAnnotation(RestController.class).forEach((name, bean) ->
+                pluginApplication.lookupBeanDefinition(name, bean)
+                        .filter(ControllerBeanDefinition.class::isInstance)
+                        .ifPresent(d -> all.put((ControllerBeanDefinition) d, bean)));
+        all.forEach((definition, bean) -> pluginApplication.getControllerProcessor().registerController(definition, bean));
+        controllers = new LinkedHashMap<>();
+        all.forEach((definition, bean) -> {
+            if ("routes-0".equals(definition.pluginId())) {
+                controllers.put(definition, bean);
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void registerAndUnregister() {
+        ControllerProcessor processor = fixture.getPluginApplication().getControllerProcessor();
+        processor.registerControllers(controllers);
+        processor.unregisterControllers(controllers.keySet());
+    }
+
+    /**
+     * 逐个controller注册, 每次都加锁并计算 mapping
+     */
+    @Benchmark
+    public void registerAndUnregisterOneByOne() {
+        ControllerProcessor processor = fixture.getPluginApplication().getControllerProcessor();
+        controllers.forEach(processor::registerController);
+        controllers.keySet().forEach(processor::unregisterController);
+    }
+
+    public static class HostController {
+        public String handle() {
+            return "host";
+        }
+    }
+}
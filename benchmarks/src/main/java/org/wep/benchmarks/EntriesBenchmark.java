@@ -0,0 +1,61 @@
+package org.wep.benchmarks;
+
+import org.wep.plugins.EntryWrapper;
+import org.wep.plugins.PluginEntry;
+import org.wep.plugins.PluginException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * PluginApplication.entries 遍历所有插件jar中的类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntriesBenchmark {
+    @Param({"10", "50"})
+    private int plugins;
+    @Param({"100", "1000"})
+    private int classesPerPlugin;
+    private final EntryWrapper.ClassEntryWrapper classWrapper = new EntryWrapper.ClassEntryWrapper();
+    private PluginFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<SyntheticPlugin> list = new ArrayList<>();
+        for (int i = 0; i < plugins; i++) {
+            list.add(new SyntheticPlugin("entries-" + i).plainClasses(classesPerPlugin));
+        }
+        fixture = PluginFixture.start(list);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Collection<PluginEntry<?>> entries() throws IOException, PluginException {
+        return fixture.getPluginApplication().entries(classWrapper);
+    }
+
+    /**
+     * 只取第一个条目, 只打开第一个jar
+     */
+    @Benchmark
+    public Optional<PluginEntry<?>> streamFirst() {
+        try (Stream<PluginEntry<?>> entries = fixture.getPluginApplication().streamEntries(classWrapper)) {
+            return entries.findFirst();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.wep.benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录耗时(纳秒), 汇总为均值和分位数, 不是线程安全的, 多线程时各自记录后合并
+ */
+public class Latencies {
+    private long[] values = new long[1024];
+    private int size;
+
+    public void add(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+    }
+
+    public void addAll(Latencies other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param unit 汇总结果的时间单位
+     */
+    public Map<String, Object> summary(TimeUnit unit) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("unit", unit.name().toLowerCase());
+        summary.put("count", size);
+        if (size == 0) {
+            return summary;
+        }
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long value : sorted) {
+            total += value;
+        }
+        summary.put("mean", convert(total / (double) size, unit));
+        summary.put("p50", convert(percentile(sorted, 0.50), unit));
+        summary.put("p90", convert(percentile(sorted, 0.90), unit));
+        summary.put("p99", convert(percentile(sorted, 0.99), unit));
+        summary.put("max", convert(sorted[size - 1], unit));
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double convert(double nanos, TimeUnit unit) {
+        return Math.round(nanos / unit.toNanos(1) * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,94 @@
+package org.wep.benchmarks;
+
+import org.wep.plugins.PluginApplication;
+import org.wep.plugins.PluginBeanDefinition;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bean后处理时每个bean都会调用 lookupBeanDefinition, 宿主bean应当尽快返回空
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBeanDefinitionBenchmark {
+    private static final int BEANS_PER_PLUGIN = 50;
+    @Param({"100", "1000"})
+    private int pluginBeans;
+    @Param({"100", "1000"})
+    private int hostBeans;
+    private PluginFixture fixture;
+    private String[] pluginNames;
+    private Object[] pluginInstances;
+    private String[] hostNames;
+    private Object[] hostInstances;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<SyntheticPlugin> list = new ArrayList<>();
+        for (int remaining = pluginBeans, i = 0; remaining > 0; remaining -= BEANS_PER_PLUGIN, i++) {
+            list.add(new SyntheticPlugin("lookup-" + i).components(Math.min(remaining, BEANS_PER_PLUGIN)));
+        }
+        fixture = PluginFixture.start(list);
+        DefaultListableBeanFactory beanFactory = fixture.getContext().getDefaultListableBeanFactory();
+        hostNames = new String[hostBeans];
+        hostInstances = new Object[hostBeans];
+        for (int i = 0; i < hostBeans; i++) {
+            hostNames[i] = "host" + i;
+            hostInstances[i] = new HostBean();
+            beanFactory.registerSingleton(hostNames[i], hostInstances[i]);
+        }
+        Map<String, Object> beans = fixture.getPluginApplication().getBeansWithAnnotation(Component.class);
+        List<String> names = new ArrayList<>();
+        List<Object> instances = new ArrayList<>();
+        beans.forEach((name, bean) -> {
+            if (fixture.getPluginApplication().lookupBeanDefinition(name, bean).isPresent()) {
+                names.add(name);
+                instances.add(bean);
+            }
+        });
+        pluginNames = names.toArray(new String[0]);
+        pluginInstances = instances.toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Optional<PluginBeanDefinition> pluginBean() {
+        int i = next++ % pluginNames.length;
+        return fixture.getPluginApplication().lookupBeanDefinition(pluginNames[i], pluginInstances[i]);
+    }
+
+    @Benchmark
+    public Optional<PluginBeanDefinition> hostBean() {
+        int i = next++ % hostNames.length;
+        return fixture.getPluginApplication().lookupBeanDefinition(hostNames[i], hostInstances[i]);
+    }
+
+    /**
+     * 没有bean name时按类查找
+     */
+    @Benchmark
+    public Optional<PluginBeanDefinition> pluginBeanByClass() {
+        PluginApplication pluginApplication = fixture.getPluginApplication();
+        return pluginApplication.lookupBeanDefinition(pluginInstances[next++ % pluginInstances.length]);
+    }
+
+    public static class HostBean {
+    }
+}
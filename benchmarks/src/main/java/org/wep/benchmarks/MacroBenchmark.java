@@ -0,0 +1,309 @@
+package org.wep.benchmarks;
+
+import org.wep.plugins.Config;
+import org.wep.plugins.PluginApplication;
+import org.wep.plugins.PluginException;
+import org.wep.utils.BeanUtils;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 宏基准: 生成N个合成插件, 启动带 PluginApplicationAutoConfiguration 的 Spring Boot 宿主, 测量
+ * 启动到就绪的时间、每个插件 stop/uninstall/install/start 的耗时、插件反复热替换期间的请求延迟,
+ * 以及K轮替换后的堆、元空间和类数量
+ * <p>
+ * 参数(括号内为默认值): --plugins(20) --classes(200) --components(20) --controllers(5) --methods(10)
+ * --configs(2) --extensions(2) --churn(2) --cycles(20) --threads(8) --steady-seconds(5)
+ * --output(macro-result-{版本}.json), 其他 --plugin.xxx 等参数作为宿主的配置
+ */
+public class MacroBenchmark {
+    private static final byte[] DRAIN = new byte[4096];
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        Path root = Files.createTempDirectory("wep-macro");
+        Path pluginPath = Files.createDirectories(root.resolve("plugins"));
+        Path configPath = Files.createDirectories(root.resolve("configs"));
+        Path sourcePath = Files.createDirectories(root.resolve("source"));
+        List<SyntheticPlugin> plugins = new ArrayList<>();
+        for (int i = 0; i < options.get("plugins"); i++) {
+            SyntheticPlugin plugin = new SyntheticPlugin("macro-" + i)
+                    .plainClasses(options.get("classes"))
+                    .components(options.get("components"))
+                    .controllers(options.get("controllers"), options.get("methods"))
+                    .configs(options.get("configs"))
+                    .extensions(options.get("extensions"));
+            Files.copy(plugin.write(sourcePath), pluginPath.resolve(plugin.getPluginId() + ".jar"));
+            plugin.writeConfigs(configPath);
+            plugins.add(plugin);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", options.values);
+        long begin = System.nanoTime();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Host.class)
+                .properties("server.port=0",
+                        "spring.main.banner-mode=off",
+                        "plugin.plugin-path=" + pluginPath,
+                        "plugin.plugin-config-file-path=" + configPath)
+                .run(args);
+        result.put("readyMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        try {
+            PluginApplication pluginApplication = context.getBean(PluginApplication.class);
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            result.put("startedPlugins", pluginApplication.getPluginDescriptors().stream()
+                    .filter(p -> "STARTED".equals(p.getState())).count());
+            result.put("memoryAfterStart", memory());
+
+            List<String> urls = urls(pluginApplication, plugins, options, port);
+            Load steady = new Load(urls, options.get("threads"));
+            steady.start();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(options.get("steady-seconds")));
+            result.put("steadyRequests", steady.stop());
+
+            Load churning = new Load(urls, options.get("threads"));
+            churning.start();
+            Map<String, Latencies> operations = churn(context, pluginApplication,
+                    plugins.subList(0, Math.min(options.get("churn"), plugins.size())),
+                    options.get("cycles"), sourcePath, pluginPath);
+            result.put("churnRequests", churning.stop());
+            Map<String, Object> summaries = new LinkedHashMap<>();
+            operations.forEach((operation, latencies) -> summaries.put(operation, latencies.summary(TimeUnit.MILLISECONDS)));
+            result.put("operations", summaries);
+            result.put("memoryAfterCycles", memory());
+            if (pluginApplication.getResourceAccounting().isEnabled()) {
+                result.put("resourceUsage", pluginApplication.getResourceAccounting().top(10));
+            }
+        } finally {
+            context.close();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        String json = BeanUtils.prettyJson(result);
+        System.out.println(json);
+        Files.write(Paths.get(options.output()), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每轮依次对每个插件执行 stop -> uninstall -> install -> start
+     * 插件启动时创建controller并注册路由, 其余插件bean由宿主按需创建, 这里在 start 之后立即创建, 以绑定配置
+     */
+    private static Map<String, Latencies> churn(ConfigurableApplicationContext context, PluginApplication pluginApplication,
+                                                List<SyntheticPlugin> plugins, int cycles, Path sourcePath, Path pluginPath)
+            throws IOException, PluginException {
+        Map<String, Latencies> operations = new LinkedHashMap<>();
+        for (String operation : new String[]{"stop", "uninstall", "install", "start"}) {
+            operations.put(operation, new Latencies());
+        }
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            for (SyntheticPlugin plugin : plugins) {
+                String pluginId = plugin.getPluginId();
+                long begin = System.nanoTime();
+                pluginApplication.stop(pluginId);
+                operations.get("stop").add(System.nanoTime() - begin);
+
+                begin = System.nanoTime();
+                pluginApplication.uninstall(pluginId);
+                operations.get("uninstall").add(System.nanoTime() - begin);
+
+                // uninstall 会删除插件jar
+                Path jar = Files.copy(sourcePath.resolve(pluginId + ".jar"), pluginPath.resolve(pluginId + ".jar"),
+                        StandardCopyOption.REPLACE_EXISTING);
+                begin = System.nanoTime();
+                pluginApplication.install(jar.toFile());
+                operations.get("install").add(System.nanoTime() - begin);
+
+                begin = System.nanoTime();
+                pluginApplication.start(pluginId);
+                context.getBeansWithAnnotation(Component.class);
+                context.getBeansWithAnnotation(Config.class);
+                context.getBeansOfType(SyntheticExtension.class);
+                operations.get("start").add(System.nanoTime() - begin);
+            }
+        }
+        return operations;
+    }
+
+    private static List<String> urls(PluginApplication pluginApplication, List<SyntheticPlugin> plugins, Options options, int port) {
+        String base = "http://localhost:" + port;
+        List<String> urls = new ArrayList<>();
+        urls.add(base + "/host");
+        for (SyntheticPlugin plugin : plugins) {
+            String prefix = pluginApplication.getControllerProcessor().refreshMappingPath(plugin.getPluginId());
+            prefix = prefix.isEmpty() || prefix.startsWith("/") ? prefix : "/" + prefix;
+            for (int i = 0; i < options.get("controllers"); i++) {
+                for (int j = 0; j < options.get("methods"); j++) {
+                    urls.add(base + prefix + plugin.controllerPath(i) + "/m" + j);
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * GC 之后的堆、元空间和已加载的类, 用于发现插件卸载后没有释放的类加载器
+     */
+    private static Map<String, Object> memory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Map<String, Object> memory = new LinkedHashMap<>();
+        memory.put("heapUsedBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                memory.put("metaspaceUsedBytes", pool.getUsage().getUsed());
+            }
+        }
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        memory.put("loadedClasses", classLoading.getLoadedClassCount());
+        memory.put("unloadedClasses", classLoading.getUnloadedClassCount());
+        return memory;
+    }
+
+    /**
+     * 多个线程随机请求插件和宿主的路由, 记录每个请求的耗时和状态码
+     */
+    private static class Load {
+        private final List<String> urls;
+        private final List<Thread> threads = new ArrayList<>();
+        private final List<Latencies> latencies = new ArrayList<>();
+        private final Map<Integer, AtomicLong> statuses = new TreeMap<>();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile boolean running = true;
+        private long begin;
+
+        private Load(List<String> urls, int threads) {
+            this.urls = urls;
+            for (int i = 0; i < threads; i++) {
+                Latencies recorded = new Latencies();
+                latencies.add(recorded);
+                Thread thread = new Thread(() -> run(recorded), "macro-load-" + i);
+                thread.setDaemon(true);
+                this.threads.add(thread);
+            }
+        }
+
+        private void start() {
+            begin = System.nanoTime();
+            threads.forEach(Thread::start);
+        }
+
+        private void run(Latencies recorded) {
+            while (running) {
+                String url = urls.get(ThreadLocalRandom.current().nextInt(urls.size()));
+                long begin = System.nanoTime();
+                try {
+                    int status = get(url);
+                    recorded.add(System.nanoTime() - begin);
+                    synchronized (statuses) {
+                        statuses.computeIfAbsent(status, k -> new AtomicLong()).incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+            }
+        }
+
+        private static int get(String url) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(5000);
+            int status = connection.getResponseCode();
+            // 读完并关闭响应以复用连接
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    while (in.read(DRAIN) != -1) {
+                        // drain
+                    }
+                }
+            }
+            return status;
+        }
+
+        private Map<String, Object> stop() throws InterruptedException {
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsed = System.nanoTime() - begin;
+            Latencies all = new Latencies();
+            latencies.forEach(all::addAll);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("seconds", elapsed / 1e9);
+            summary.put("requestsPerSecond", Math.round(all.size() / (elapsed / 1e9)));
+            summary.put("latency", all.summary(TimeUnit.MICROSECONDS));
+            summary.put("statuses", statuses);
+            summary.put("ioFailures", failures.get());
+            return summary;
+        }
+    }
+
+    private static class Options {
+        private static final String[][] DEFAULTS = {
+                {"plugins", "20"}, {"classes", "200"}, {"components", "20"}, {"controllers", "5"}, {"methods", "10"},
+                {"configs", "2"}, {"extensions", "2"}, {"churn", "2"}, {"cycles", "20"}, {"threads", "8"},
+                {"steady-seconds", "5"}};
+        private final Map<String, String> values = new LinkedHashMap<>();
+
+        private Options(String[] args) {
+            for (String[] option : DEFAULTS) {
+                values.put(option[0], option[1]);
+            }
+            values.put("output", String.format("macro-result-%s.json", BenchmarkMain.version()));
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (arg.startsWith("--") && eq > 2 && values.containsKey(arg.substring(2, eq))) {
+                    values.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            }
+        }
+
+        private int get(String name) {
+            return Integer.parseInt(values.get(name));
+        }
+
+        private String output() {
+            return values.get("output");
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableAutoConfiguration
+    @Import(HostController.class)
+    public static class Host {
+    }
+
+    @RestController
+    public static class HostController {
+        @GetMapping("/host")
+        public String host() {
+            return "host";
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.wep.benchmarks;
+
+import org.wep.plugins.PluginApplication;
+import org.wep.plugins.PluginException;
+import org.wep.plugins.PluginHandlerMapping;
+import org.wep.plugins.PluginInfo;
+import org.wep.plugins.PluginProperties;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 临时目录中的合成插件 + 只有 requestMappingHandlerMapping 的最小宿主容器, 不启动web服务
+ */
+public class PluginFixture implements Closeable {
+    private final Path pluginPath;
+    private final GenericWebApplicationContext context;
+    private final PluginApplication pluginApplication;
+
+    private PluginFixture(Path pluginPath, GenericWebApplicationContext context, PluginApplication pluginApplication) {
+        this.pluginPath = pluginPath;
+        this.context = context;
+        this.pluginApplication = pluginApplication;
+    }
+
+    /**
+     * @param plugins  要生成的插件
+     * @param settings 启动前修改配置
+     */
+    public static PluginFixture start(List<SyntheticPlugin> plugins, Consumer<PluginProperties> settings) throws IOException {
+        Path pluginPath = Files.createTempDirectory("wep-bench-plugins");
+        for (SyntheticPlugin plugin : plugins) {
+            plugin.write(pluginPath);
+        }
+        PluginProperties properties = new PluginProperties();
+        properties.setPluginPath(pluginPath.toString());
+        settings.accept(properties);
+        GenericWebApplicationContext context = new GenericWebApplicationContext();
+        context.registerBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        if (properties.isDedicatedHandlerMapping()) {
+            context.registerBean(PluginHandlerMapping.class);
+        }
+        context.refresh();
+        PluginApplication pluginApplication = new PluginApplication(context, properties);
+        pluginApplication.init();
+        return new PluginFixture(pluginPath, context, pluginApplication);
+    }
+
+    public static PluginFixture start(List<SyntheticPlugin> plugins) throws IOException {
+        return start(plugins, p -> {
+        });
+    }
+
+    public PluginApplication getPluginApplication() {
+        return pluginApplication;
+    }
+
+    public GenericWebApplicationContext getContext() {
+        return context;
+    }
+
+    public Path getPluginPath() {
+        return pluginPath;
+    }
+
+    public RequestMappingHandlerMapping getHandlerMapping() {
+        return context.getBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<String> started = new ArrayList<>();
+        for (PluginInfo info : pluginApplication.getPluginDescriptors()) {
+            if ("STARTED".equals(info.getState())) {
+                started.add(info.getPluginId());
+            }
+        }
+        for (String pluginId : started) {
+            try {
+                pluginApplication.stop(pluginId);
+            } catch (PluginException e) {
+                throw new IOException(e);
+            }
+        }
+        try {
+            pluginApplication.destroy();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        context.close();
+        try (Stream<Path> files = Files.walk(pluginPath)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
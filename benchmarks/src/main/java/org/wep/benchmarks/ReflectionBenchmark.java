@@ -0,0 +1,209 @@
+package org.wep.benchmarks;
+
+import org.wep.utils.ReflectionUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReflectionUtils 按字段名读写属性, 字段在类中的位置和所在的继承层级参数化
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionBenchmark {
+    @Param({"f0", "f15"})
+    private String fieldName;
+    private Wide bean;
+    private Child child;
+    private Field field;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchFieldException {
+        bean = new Wide();
+        child = new Child();
+        field = ReflectionUtils.getField(Wide.class, fieldName);
+    }
+
+    @Benchmark
+    public Object getter() throws Exception {
+        return ReflectionUtils.getter(fieldName, bean);
+    }
+
+    /**
+     * 字段在父类中声明
+     */
+    @Benchmark
+    public Object getterInherited() throws Exception {
+        return ReflectionUtils.getter(fieldName, child);
+    }
+
+    @Benchmark
+    public Object getterByField() throws Exception {
+        return ReflectionUtils.getter(field, bean);
+    }
+
+    @Benchmark
+    public Object setter() throws Exception {
+        return ReflectionUtils.setter(fieldName, "value", bean);
+    }
+
+    @Benchmark
+    public Object setterByField() throws Exception {
+        return ReflectionUtils.setter(field, "value", bean);
+    }
+
+    public static class Wide {
+        private String f0;
+        private String f1;
+        private String f2;
+        private String f3;
+        private String f4;
+        private String f5;
+        private String f6;
+        private String f7;
+        private String f8;
+        private String f9;
+        private String f10;
+        private String f11;
+        private String f12;
+        private String f13;
+        private String f14;
+        private String f15;
+
+        public String getF0() {
+            return f0;
+        }
+
+        public void setF0(String f0) {
+            this.f0 = f0;
+        }
+
+        public String getF1() {
+            return f1;
+        }
+
+        public void setF1(String f1) {
+            this.f1 = f1;
+        }
+
+        public String getF2() {
+            return f2;
+        }
+
+        public void setF2(String f2) {
+            this.f2 = f2;
+        }
+
+        public String getF3() {
+            return f3;
+        }
+
+        public void setF3(String f3) {
+            this.f3 = f3;
+        }
+
+        public String getF4() {
+            return f4;
+        }
+
+        public void setF4(String f4) {
+            this.f4 = f4;
+        }
+
+        public String getF5() {
+            return f5;
+        }
+
+        public void setF5(String f5) {
+            this.f5 = f5;
+        }
+
+        public String getF6() {
+            return f6;
+        }
+
+        public void setF6(String f6) {
+            this.f6 = f6;
+        }
+
+        public String getF7() {
+            return f7;
+        }
+
+        public void setF7(String f7) {
+            this.f7 = f7;
+        }
+
+        public String getF8() {
+            return f8;
+        }
+
+        public void setF8(String f8) {
+            this.f8 = f8;
+        }
+
+        public String getF9() {
+            return f9;
+        }
+
+        public void setF9(String f9) {
+            this.f9 = f9;
+        }
+
+        public String getF10() {
+            return f10;
+        }
+
+        public void setF10(String f10) {
+            this.f10 = f10;
+        }
+
+        public String getF11() {
+            return f11;
+        }
+
+        public void setF11(String f11) {
+            this.f11 = f11;
+        }
+
+        public String getF12() {
+            return f12;
+        }
+
+        public void setF12(String f12) {
+            this.f12 = f12;
+        }
+
+        public String getF13() {
+            return f13;
+        }
+
+        public void setF13(String f13) {
+            this.f13 = f13;
+        }
+
+        public String getF14() {
+            return f14;
+        }
+
+        public void setF14(String f14) {
+            this.f14 = f14;
+        }
+
+        public String getF15() {
+            return f15;
+        }
+
+        public void setF15(String f15) {
+            this.f15 = f15;
+        }
+    }
+
+    public static class Child extends Wide {
+    }
+}
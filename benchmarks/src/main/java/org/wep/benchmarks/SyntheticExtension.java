@@ -0,0 +1,10 @@
+package org.wep.benchmarks;
+
+import org.pf4j.ExtensionPoint;
+
+/**
+ * 合成插件中 @Extension 类实现的扩展点
+ */
+public interface SyntheticExtension extends ExtensionPoint {
+    String call();
+}
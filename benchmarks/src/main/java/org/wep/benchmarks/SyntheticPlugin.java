@@ -0,0 +1,304 @@
+package org.wep.benchmarks;
+
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * 生成与 plugin-archetype 打包结果形状一致的pf4j插件jar:
+ * manifest 中的插件信息、Plugin 子类、plugin-processor 生成的bean索引、pf4j 的扩展索引,
+ * 以及指定数量的 @Component、@RestController、@Config、@Extension 和普通类
+ * 类文件直接用 asm 生成, 不需要编译器
+ */
+public class SyntheticPlugin {
+    private static final String COMPONENT = "Lorg/springframework/stereotype/Component;";
+    private static final String REST_CONTROLLER = "Lorg/springframework/web/bind/annotation/RestController;";
+    private static final String REQUEST_MAPPING = "Lorg/springframework/web/bind/annotation/RequestMapping;";
+    private static final String GET_MAPPING = "Lorg/springframework/web/bind/annotation/GetMapping;";
+    private static final String CONFIG = "Lorg/wep/plugins/Config;";
+    private static final String EXTENSION = "Lorg/pf4j/Extension;";
+    private static final String EXTENSION_POINT = SyntheticExtension.class.getName().replace('.', '/');
+    private final String pluginId;
+    private final String packageName;
+    private int components;
+    private int controllers;
+    private int methodsPerController = 1;
+    private int configs;
+    private int extensions;
+    private int plainClasses;
+    private boolean index = true;
+
+    public SyntheticPlugin(String pluginId) {
+        this.pluginId = pluginId;
+        this.packageName = "org/wep/synthetic/" + pluginId.replaceAll("[^A-Za-z0-9]", "_");
+    }
+
+    public SyntheticPlugin components(int components) {
+        this.components = components;
+        return this;
+    }
+
+    public SyntheticPlugin controllers(int controllers, int methodsPerController) {
+        this.controllers = controllers;
+        this.methodsPerController = methodsPerController;
+        return this;
+    }
+
+    /**
+     * 每个 @Config 类绑定自己的配置文件 {pluginId}-config{i}.yml, 由 writeConfigs 生成
+     */
+    public SyntheticPlugin configs(int configs) {
+        this.configs = configs;
+        return this;
+    }
+
+    /**
+     * 实现 SyntheticExtension 的 @Extension 类
+     */
+    public SyntheticPlugin extensions(int extensions) {
+        this.extensions = extensions;
+        return this;
+    }
+
+    /**
+     * 不是bean的类, 只增加扫描的条目数
+     */
+    public SyntheticPlugin plainClasses(int plainClasses) {
+        this.plainClasses = plainClasses;
+        return this;
+    }
+
+    /**
+     * @param index 是否写入 plugin-processor 的bean索引, 不写入时框架扫描整个jar
+     */
+    public SyntheticPlugin index(boolean index) {
+        this.index = index;
+        return this;
+    }
+
+    public String getPluginId() {
+        return pluginId;
+    }
+
+    /**
+     * @return 写入的jar: {directory}/{pluginId}.jar
+     */
+    public Path write(Path directory) throws IOException {
+        Path jar = directory.resolve(pluginId + ".jar");
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Plugin-Id", pluginId);
+        attributes.putValue("Plugin-Version", "1.0");
+        attributes.putValue("Plugin-Provider", "org.wep");
+        attributes.putValue("Plugin-Class", className("Def").replace('/', '.'));
+        List<String> beans = new ArrayList<>();
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+            put(jarOut, className("Def") + ".class", pluginClass(className("Def")));
+            for (int i = 0; i < components; i++) {
+                String name = className("Component" + i);
+                put(jarOut, name + ".class", component(name));
+                beans.add(name.replace('/', '.'));
+            }
+            for (int i = 0; i < controllers; i++) {
+                String name = className("Controller" + i);
+                put(jarOut, name + ".class", controller(name, controllerPath(i), methodsPerController));
+                beans.add(name.replace('/', '.'));
+            }
+            for (int i = 0; i < configs; i++) {
+                String name = className("Config" + i);
+                put(jarOut, name + ".class", config(name, configFileName(i)));
+                beans.add(name.replace('/', '.'));
+            }
+            List<String> extensionNames = new ArrayList<>();
+            for (int i = 0; i < extensions; i++) {
+                String name = className("Extension" + i);
+                put(jarOut, name + ".class", extension(name, "extension" + i));
+                extensionNames.add(name.replace('/', '.'));
+            }
+            if (!extensionNames.isEmpty()) {
+                put(jarOut, "META-INF/extensions.idx", String.join("\n", extensionNames).getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < plainClasses; i++) {
+                String name = className("Plain" + i);
+                put(jarOut, name + ".class", plain(name));
+            }
+            if (index) {
+                put(jarOut, "META-INF/wep/plugin-beans.idx", String.join("\n", beans).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return jar;
+    }
+
+    /**
+     * 写入 @Config 类绑定的配置文件
+     */
+    public void writeConfigs(Path configDirectory) throws IOException {
+        for (int i = 0; i < configs; i++) {
+            String yaml = "host: " + pluginId + "-" + i + "\nport: " + (8000 + i) + "\n";
+            Files.write(configDirectory.resolve(configFileName(i)), yaml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 宿主的 handler mapping 初始化时会按原始路径注册已启动插件的controller,
+     * 路径中带上插件id, 避免不同插件的同名路由冲突
+     *
+     * @return 第i个controller的 @RequestMapping 路径, 方法的路径为 /m{j}
+     */
+    public String controllerPath(int i) {
+        return "/" + pluginId + "/c" + i;
+    }
+
+    private String configFileName(int i) {
+        return pluginId + "-config" + i + ".yml";
+    }
+
+    private String className(String simpleName) {
+        return packageName + "/" + simpleName;
+    }
+
+    private static void put(JarOutputStream out, String name, byte[] bytes) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static ClassWriter begin(String name, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, interfaces);
+        return writer;
+    }
+
+    private static void defaultConstructor(ClassWriter writer) {
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void path(AnnotationVisitor annotation, String path) {
+        AnnotationVisitor value = annotation.visitArray("value");
+        value.visit(null, path);
+        value.visitEnd();
+        annotation.visitEnd();
+    }
+
+    static byte[] pluginClass(String name) {
+        ClassWriter writer = begin(name, "org/pf4j/Plugin");
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(Lorg/pf4j/PluginWrapper;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "org/pf4j/Plugin", "<init>", "(Lorg/pf4j/PluginWrapper;)V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    static byte[] component(String name) {
+        ClassWriter writer = begin(name, "java/lang/Object");
+        writer.visitAnnotation(COMPONENT, true).visitEnd();
+        defaultConstructor(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * 每个方法: @GetMapping("/m{i}") public String m{i}() { return "m{i}"; }
+     */
+    static byte[] controller(String name, String path, int methods) {
+        ClassWriter writer = begin(name, "java/lang/Object");
+        writer.visitAnnotation(REST_CONTROLLER, true).visitEnd();
+        path(writer.visitAnnotation(REQUEST_MAPPING, true), path);
+        defaultConstructor(writer);
+        for (int i = 0; i < methods; i++) {
+            MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "m" + i, "()Ljava/lang/String;", null, null);
+            path(mv.visitAnnotation(GET_MAPPING, true), "/m" + i);
+            mv.visitCode();
+            mv.visitLdcInsn("m" + i);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * private String host; private int port; 以及 getter/setter
+     */
+    static byte[] config(String name, String fileName) {
+        ClassWriter writer = begin(name, "java/lang/Object");
+        AnnotationVisitor annotation = writer.visitAnnotation(CONFIG, true);
+        annotation.visit("value", fileName);
+        annotation.visitEnd();
+        defaultConstructor(writer);
+        property(writer, name, "host", "Ljava/lang/String;", Opcodes.ALOAD, Opcodes.ARETURN);
+        property(writer, name, "port", "I", Opcodes.ILOAD, Opcodes.IRETURN);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void property(ClassWriter writer, String owner, String field, String descriptor, int load, int ret) {
+        writer.visitField(Opcodes.ACC_PRIVATE, field, descriptor, null, null).visitEnd();
+        String capitalized = Character.toUpperCase(field.charAt(0)) + field.substring(1);
+        MethodVisitor getter = writer.visitMethod(Opcodes.ACC_PUBLIC, "get" + capitalized, "()" + descriptor, null, null);
+        getter.visitCode();
+        getter.visitVarInsn(Opcodes.ALOAD, 0);
+        getter.visitFieldInsn(Opcodes.GETFIELD, owner, field, descriptor);
+        getter.visitInsn(ret);
+        getter.visitMaxs(0, 0);
+        getter.visitEnd();
+        MethodVisitor setter = writer.visitMethod(Opcodes.ACC_PUBLIC, "set" + capitalized, "(" + descriptor + ")V", null, null);
+        setter.visitCode();
+        setter.visitVarInsn(Opcodes.ALOAD, 0);
+        setter.visitVarInsn(load, 1);
+        setter.visitFieldInsn(Opcodes.PUTFIELD, owner, field, descriptor);
+        setter.visitInsn(Opcodes.RETURN);
+        setter.visitMaxs(0, 0);
+        setter.visitEnd();
+    }
+
+    /**
+     * @Extension public class X implements SyntheticExtension { public String call() { return value; } }
+     */
+    static byte[] extension(String name, String value) {
+        ClassWriter writer = begin(name, "java/lang/Object", EXTENSION_POINT);
+        writer.visitAnnotation(EXTENSION, true).visitEnd();
+        defaultConstructor(writer);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "call", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(value);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    static byte[] plain(String name) {
+        ClassWriter writer = begin(name, "java/lang/Object");
+        defaultConstructor(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,49 @@
+package org.wep.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * plugin-processor 在编译期生成的候选bean索引
+ */
+public final class BeanIndex {
+    public static final String LOCATION = "META-INF/wep/plugin-beans.idx";
+
+    private BeanIndex() {
+    }
+
+    /**
+     * @param pluginPath 插件jar
+     * @return 索引中的类名, 插件没有索引时为空
+     */
+    public static Optional<List<String>> read(Path pluginPath) throws IOException {
+        if (!pluginPath.toFile().isFile()) {
+            return Optional.empty();
+        }
+        try (JarFile jar = new JarFile(pluginPath.toFile())) {
+            JarEntry entry = jar.getJarEntry(LOCATION);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            List<String> classNames = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty()) {
+                        classNames.add(line);
+                    }
+                }
+            }
+            return Optional.of(classNames);
+        }
+    }
+}
@@ -3,4 +3,18 @@ package org.wep.plugins;
 public interface BeanProcessor<T extends PluginBeanDefinition> {
 
     Object resolveBean(T definition, Object bean);
+
+    /**
+     * @return 处理的bean定义类型, 返回null时根据泛型参数推断
+     */
+    default Class<T> supportedDefinitionType() {
+        return null;
+    }
+
+    /**
+     * @return 是否只处理初始化完成后的bean, 否则初始化前后各处理一次
+     */
+    default boolean afterInitializationOnly() {
+        return false;
+    }
 }
@@ -24,7 +24,7 @@ public class ClassEntry implements PluginEntry<Class<?>> {
         }
         try {
             String className = entry.getName().replace(CLASS, "").replace("/", ".");
-            return pluginInfo.getClassLoader().loadClass(className);
+            return pluginInfo.loadClass(className);
         } catch (Exception e) {
             throw new PluginException(e);
         }
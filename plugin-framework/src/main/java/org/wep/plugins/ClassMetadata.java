@@ -0,0 +1,212 @@
+package org.wep.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 直接从class文件字节中读取的类信息, 不经过类加载
+ * 只解析常量池、访问标志、父类和类上的 RuntimeVisibleAnnotations
+ */
+public class ClassMetadata {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_MODULE = 0x8000;
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final String className;
+    private final String superClassName;
+    private final int access;
+    private final Set<String> annotations;
+
+    private ClassMetadata(String className, String superClassName, int access, Set<String> annotations) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.access = access;
+        this.annotations = annotations;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return 父类名称, java.lang.Object 和 module-info 为null
+     */
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    public boolean isInterface() {
+        return (access & (ACC_INTERFACE | ACC_ANNOTATION | ACC_MODULE)) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (access & ACC_ABSTRACT) != 0;
+    }
+
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+    public boolean hasAnnotation(String annotation) {
+        return annotations.contains(annotation);
+    }
+
+    public boolean hasAnyAnnotation(Collection<String> candidates) {
+        for (String annotation : annotations) {
+            if (candidates.contains(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static ClassMetadata read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a class file");
+        }
+        // minor_version, major_version
+        skip(in, 4);
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7:
+                    classes[i] = in.readUnsignedShort();
+                    break;
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    skip(in, 2);
+                    break;
+                case 15:
+                    skip(in, 3);
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    skip(in, 4);
+                    break;
+                case 5:
+                case 6:
+                    skip(in, 8);
+                    // long 和 double 占两个常量池位置
+                    i++;
+                    break;
+                default:
+                    throw new IOException("unknown constant pool tag: " + tag);
+            }
+        }
+        int access = in.readUnsignedShort();
+        String className = className(utf8, classes, in.readUnsignedShort());
+        String superClassName = className(utf8, classes, in.readUnsignedShort());
+        skip(in, 2 * in.readUnsignedShort());
+        skipMembers(in);
+        skipMembers(in);
+        Set<String> annotations = Collections.emptySet();
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            String name = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(name)) {
+                annotations = readAnnotations(in, utf8);
+            } else {
+                skip(in, length);
+            }
+        }
+        return new ClassMetadata(className, superClassName, access, annotations);
+    }
+
+    private static String className(String[] utf8, int[] classes, int index) {
+        if (index == 0) {
+            return null;
+        }
+        return utf8[classes[index]].replace('/', '.');
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // access_flags, name_index, descriptor_index
+            skip(in, 6);
+            int attributes = in.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                skip(in, 2);
+                skip(in, in.readInt());
+            }
+        }
+    }
+
+    private static Set<String> readAnnotations(DataInputStream in, String[] utf8) throws IOException {
+        int count = in.readUnsignedShort();
+        Set<String> annotations = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            // Lorg/wep/plugins/Config;
+            String descriptor = utf8[in.readUnsignedShort()];
+            annotations.add(descriptor.substring(1, descriptor.length() - 1).replace('/', '.'));
+            skipElementValuePairs(in);
+        }
+        return annotations;
+    }
+
+    private static void skipElementValuePairs(DataInputStream in) throws IOException {
+        int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            skip(in, 2);
+            skipElementValue(in);
+        }
+    }
+
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                skip(in, 4);
+                break;
+            case '@':
+                skip(in, 2);
+                skipElementValuePairs(in);
+                break;
+            case '[':
+                int values = in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(in);
+                }
+                break;
+            default:
+                // B C D F I J S Z s c
+                skip(in, 2);
+        }
+    }
+
+    private static void skip(DataInputStream in, int n) throws IOException {
+        int remaining = n;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("unexpected end of class file");
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.wep.plugins;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 import org.wep.utils.BeanUtils;
 import org.wep.utils.StringUtils;
 import org.slf4j.Logger;
@@ -8,22 +12,38 @@ import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.core.env.Environment;
 
 import java.io.File;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 public class ConfigProcessor implements BeanProcessor<ConfigBeanDefinition> {
     private static final Logger logger = LoggerFactory.getLogger(ConfigProcessor.class);
 
-    private final String regex = "\\$\\{(.*?)\\}";
-    private final Pattern pattern = Pattern.compile(regex);
     private final PluginApplication pluginApplication;
+    private final ConcurrentHashMap<String, CachedConfig> configCache = new ConcurrentHashMap<>();
+    /**
+     * 占位符 -> Environment 中的值, Environment 变化后清空
+     */
+    private final ConcurrentHashMap<String, Optional<String>> propertyCache = new ConcurrentHashMap<>();
+    private final AtomicLong environmentVersion = new AtomicLong();
+    /**
+     * resolveProperty 的字符串 -> 编译后的模板, 模板与 Environment 无关, 不需要清空
+     */
+    private final ConcurrentHashMap<String, PlaceholderTemplate> propertyTemplates = new ConcurrentHashMap<>();
 
     public ConfigProcessor(PluginApplication pluginApplication) {
         this.pluginApplication = pluginApplication;
     }
 
+    @Override
+    public Class<ConfigBeanDefinition> supportedDefinitionType() {
+        return ConfigBeanDefinition.class;
+    }
+
     @Override
     public Object resolveBean(ConfigBeanDefinition definition, Object bean) {
         return pluginApplication.getConfig(definition.getConfigFileName())
@@ -36,19 +56,81 @@ public class ConfigProcessor implements BeanProcessor<ConfigBeanDefinition> {
 
 
     protected Object config(Object bean, File configFile) {
+        return bind(bean, configFile, tree -> BeanUtils.toBean(tree, bean.getClass()));
+    }
+
+    /**
+     * 配置文件变化后, 用缓存的配置树在原来的bean上重新绑定, 不重建bean
+     * 与首次绑定一样由jackson写入属性, 没有setter的字段也会更新; 配置中删除的项保留原来的值
+     *
+     * @return 原来的bean
+     */
+    public Object rebind(Object bean, File configFile) {
+        return bind(bean, configFile, tree -> BeanUtils.update(tree, bean));
+    }
+
+    private Object bind(Object bean, File configFile, Function<JsonNode, Object> binder) {
         Objects.requireNonNull(bean);
         Objects.requireNonNull(configFile);
         String absolutePath = configFile.getAbsolutePath();
         if (!configFile.exists()) {
             throw new BeanInitializationException(String.format("config file [%s] not exists", absolutePath));
         }
-        Map<String, Object> properties = resolveEnv(configFile);
-        return BeanUtils.toBean(BeanUtils.toJson(properties), bean.getClass());
+        PluginMetrics metrics = pluginApplication.getMetrics();
+        if (metrics == PluginMetrics.NONE) {
+            return binder.apply(resolveTree(configFile));
+        }
+        long begin = System.nanoTime();
+        Object result = binder.apply(resolveTree(configFile));
+        long nanos = System.nanoTime() - begin;
+        pluginApplication.lookupBeanDefinition(bean)
+                .flatMap(definition -> pluginApplication.getPluginInfo(definition.pluginId()))
+                .ifPresent(info -> metrics.configBound(info, configFile.getName(), nanos));
+        return result;
+    }
+
+    public void evict(File configFile) {
+        configCache.remove(configFile.getAbsolutePath());
+    }
+
+    /**
+     * Environment 变化后调用, 清空占位符的值, 下次绑定时用已编译的模板重新替换
+     */
+    public void refreshEnvironment() {
+        environmentVersion.incrementAndGet();
+        propertyCache.clear();
     }
 
     public Map<String, Object> resolveEnv(File configFile) {
-        Map<String, Object> map = null;
+        return BeanUtils.toMap(resolveTree(configFile));
+    }
+
+    /**
+     * 按文件路径缓存解析并替换占位符后的配置树, 文件修改时间或大小变化后重新解析
+     * Environment 变化后只用缓存的原始配置树和已编译的模板重新替换, 不重新读文件
+     * 缓存的配置树不会再被修改, 可以被多个线程同时绑定
+     */
+    protected JsonNode resolveTree(File configFile) {
+        String absolutePath = configFile.getAbsolutePath();
+        long lastModified = configFile.lastModified();
+        long length = configFile.length();
+        long version = environmentVersion.get();
+        CachedConfig cached = configCache.get(absolutePath);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            if (cached.environmentVersion == version) {
+                return cached.tree;
+            }
+            cached = cached.withTree(version, resolveEnv(cached.raw.deepCopy(), cached.templates));
+        } else {
+            JsonNode raw = readTree(configFile);
+            Map<String, PlaceholderTemplate> templates = new ConcurrentHashMap<>();
+            cached = new CachedConfig(lastModified, length, raw, templates, version, resolveEnv(raw.deepCopy(), templates));
+        }
+        configCache.put(absolutePath, cached);
+        return cached.tree;
+    }
 
+    private JsonNode readTree(File configFile) {
         String absolutePath = configFile.getAbsolutePath();
         String suffix = absolutePath.substring(absolutePath.lastIndexOf(".") + 1);
         if (StringUtils.isEmpty(suffix)) {
@@ -59,64 +141,98 @@ public class ConfigProcessor implements BeanProcessor<ConfigBeanDefinition> {
             case "YML":
             case "yaml":
             case "YAML":
-                map = BeanUtils.toYamlMap(configFile, String.class, Object.class);
-                break;
+                return BeanUtils.toYamlTree(configFile);
             case "json":
-                map = BeanUtils.toMap(configFile, String.class, Object.class);
-                break;
+                return BeanUtils.toTree(configFile);
             case ".properties":
                 throw new BeanInitializationException("properties todo");
             default:
                 throw new BeanInitializationException(String.format("unknown config file [%s] type: %s", absolutePath, suffix));
         }
-
-        for (Map.Entry<String, Object> e : map.entrySet()) {
-            if (e.getValue() instanceof String) {
-                map.put(e.getKey(), resolveProperty(e.getValue().toString()));
-            } else if (e.getValue() instanceof Map) {
-                map.put(e.getKey(), resolveEnv((Map<String, Object>) e.getValue()));
-            }
-        }
-        return map;
     }
 
 
+    /**
+     * 替换 ${x} 占位符, 没有对应值的占位符保留原样
+     */
     public String resolveProperty(final String property) {
-        if (org.wep.utils.StringUtils.isEmpty(property)) {
+        if (StringUtils.isEmpty(property)) {
             return property;
         }
-        String replace = property;
-        Matcher matcher = pattern.matcher(property);
-        int count = 0;
-        while (matcher.find(count)) {
-            String group = matcher.group(1);
-            replace = replacePlaceholder(replace, group);
-            count = matcher.end();
-        }
-        return replace;
+        return propertyTemplates.computeIfAbsent(property, PlaceholderTemplate::compile).resolve(this::lookupProperty);
     }
 
     protected Environment env() {
         return pluginApplication.getEnv();
     }
 
-    protected String replacePlaceholder(final String property, final String placeHolder) {
-        String real = env().getProperty(placeHolder);
-        if (StringUtils.isNotEmpty(real)) {
-            return property.replace(String.format("${%s}", placeHolder), real);
-        }
-        return placeHolder;
+    protected String lookupProperty(final String placeHolder) {
+        return propertyCache.computeIfAbsent(placeHolder, p -> Optional.ofNullable(env().getProperty(p))).orElse(null);
     }
 
-    private Map<String, Object> resolveEnv(Map<String, Object> map) {
-        for (Map.Entry<String, Object> e : map.entrySet()) {
-            if (e.getValue() instanceof String) {
-                map.put(e.getKey(), resolveProperty(e.getValue().toString()));
-            } else if (e.getValue() instanceof Map) {
-                map.put(e.getKey(), resolveEnv((Map<String, Object>) e.getValue()));
+    private JsonNode resolveEnv(JsonNode node, Map<String, PlaceholderTemplate> templates) {
+        if (node instanceof ObjectNode) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> e = fields.next();
+                if (e.getValue().isTextual()) {
+                    resolveText(e.getValue().textValue(), templates).ifPresent(e::setValue);
+                } else {
+                    resolveEnv(e.getValue(), templates);
+                }
+            }
+        } else if (node instanceof ArrayNode) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0; i < array.size(); i++) {
+                if (array.get(i).isTextual()) {
+                    int index = i;
+                    resolveText(array.get(i).textValue(), templates).ifPresent(v -> array.set(index, v));
+                } else {
+                    resolveEnv(array.get(i), templates);
+                }
             }
         }
-        return map;
+        return node;
+    }
+
+    /**
+     * @return 含有占位符时返回替换后的值, 否则为空, 原节点不用替换
+     */
+    private Optional<JsonNode> resolveText(String text, Map<String, PlaceholderTemplate> templates) {
+        PlaceholderTemplate template = templates.computeIfAbsent(text, PlaceholderTemplate::compile);
+        if (!template.hasPlaceholder()) {
+            return Optional.empty();
+        }
+        return Optional.of(TextNode.valueOf(template.resolve(this::lookupProperty)));
+    }
+
+    private static class CachedConfig {
+        private final long lastModified;
+        private final long length;
+        /**
+         * 未替换占位符的配置树
+         */
+        private final JsonNode raw;
+        /**
+         * 配置中的字符串 -> 编译后的模板
+         */
+        private final Map<String, PlaceholderTemplate> templates;
+        private final long environmentVersion;
+        private final JsonNode tree;
+
+        private CachedConfig(long lastModified, long length, JsonNode raw, Map<String, PlaceholderTemplate> templates,
+                             long environmentVersion, JsonNode tree) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.raw = raw;
+            this.templates = templates;
+            this.environmentVersion = environmentVersion;
+            this.tree = tree;
+        }
+
+        private CachedConfig withTree(long environmentVersion, JsonNode tree) {
+            return new CachedConfig(lastModified, length, raw, templates, environmentVersion, tree);
+        }
     }
 
 }
@@ -0,0 +1,88 @@
+package org.wep.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 监听插件配置目录, 一段时间内没有新的文件事件后, 才对变化过的文件回调一次
+ */
+public class ConfigWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigWatcher.class);
+    private final Path directory;
+    private final long debounceMillis;
+    private final Consumer<File> onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public ConfigWatcher(Path directory, long debounceMillis, Consumer<File> onChange) throws IOException {
+        this.directory = directory;
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "plugin-config-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        logger.info("watch plugin config: {}", directory);
+        thread.start();
+    }
+
+    private void watch() {
+        Set<Path> pending = new LinkedHashSet<>();
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            logger.warn("plugin config events overflow: {}", directory);
+                            continue;
+                        }
+                        pending.add(directory.resolve((Path) event.context()));
+                    }
+                    key.reset();
+                    continue;
+                }
+                for (Path path : pending) {
+                    if (Files.isRegularFile(path)) {
+                        changed(path);
+                    }
+                }
+                pending.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    private void changed(Path path) {
+        try {
+            logger.info("plugin config changed: {}", path);
+            onChange.accept(path.toFile());
+        } catch (RuntimeException e) {
+            logger.error("error in reload plugin config: {}", path, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        thread.interrupt();
+    }
+}
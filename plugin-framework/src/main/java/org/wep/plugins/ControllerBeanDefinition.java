@@ -1,19 +1,18 @@
 package org.wep.plugins;
 
-import org.wep.utils.AnnotationUtils;
 import org.wep.utils.ArrayUtils;
 import org.wep.utils.StringUtils;
 import org.pf4j.PluginWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.util.pattern.PathPatternParser;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -21,20 +20,31 @@ import java.util.stream.Stream;
 
 public class ControllerBeanDefinition extends AbstractPluginBeanDefinition implements PluginBeanDefinition {
     private static final Logger logger = LoggerFactory.getLogger(ControllerBeanDefinition.class);
+    private static final RequestMethod[] DEFAULT_METHODS = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE};
+    private static final RequestMappingInfo.BuilderConfiguration DEFAULT_BUILDER_CONFIGURATION = defaultBuilderConfiguration();
     private final RequestMapping requestMapping;
+    /**
+     * 方法 -> 合并后的 @RequestMapping(包括 @GetMapping、@PatchMapping 等组合注解), 创建定义时解析一次
+     */
+    private final Map<Method, RequestMapping> methodMappings;
     private final List<Method> mappingMethods;
-    private RequestMappingInfo.BuilderConfiguration defaultBuilderConfiguration;
 
     public ControllerBeanDefinition(Class<?> beanClass, PluginWrapper plugin) {
         super(beanClass, plugin);
-        RequestMapping requestMapping = beanClass.getAnnotation(RequestMapping.class);
+        RequestMapping requestMapping = AnnotatedElementUtils.findMergedAnnotation(beanClass, RequestMapping.class);
         if (requestMapping == null) {
             throw new BeanCreationException("missing @RequestMapping on " + beanClass);
         }
         this.requestMapping = requestMapping;
-        this.mappingMethods = AnnotationUtils.annotatedMethods(beanClass,
-                        RequestMapping.class, GetMapping.class, PutMapping.class, PostMapping.class, DeleteMapping.class)
-                .values().stream().flatMap(Collection::stream).collect(Collectors.toList());
+        Map<Method, RequestMapping> methodMappings = new LinkedHashMap<>();
+        for (Method method : beanClass.getDeclaredMethods()) {
+            RequestMapping mapping = AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+            if (mapping != null) {
+                methodMappings.put(method, mapping);
+            }
+        }
+        this.methodMappings = Collections.unmodifiableMap(methodMappings);
+        this.mappingMethods = Collections.unmodifiableList(new ArrayList<>(methodMappings.keySet()));
     }
 
     public List<Method> getMappingMethods() {
@@ -42,103 +52,64 @@ public class ControllerBeanDefinition extends AbstractPluginBeanDefinition imple
     }
 
     public boolean match(Map.Entry<RequestMappingInfo, HandlerMethod> entry) {
-        return mappingMethods.stream()
-                .anyMatch(e -> e.equals(entry.getValue().getMethod()));
+        return methodMappings.containsKey(entry.getValue().getMethod());
     }
 
     public Optional<RequestMappingInfo> resolveRequestMappingInfo(Map.Entry<RequestMappingInfo, HandlerMethod> entry, String prefix) {
-        return mappingMethods.stream().filter(l -> l.equals(entry.getValue().getMethod()))
-                .findAny()
-                .map(ex -> resolveRequestMappingInfo(ex, prefix));
+        Method method = entry.getValue().getMethod();
+        return methodMappings.containsKey(method)
+                ? Optional.of(resolveRequestMappingInfo(method, prefix))
+                : Optional.empty();
     }
 
     public RequestMappingInfo resolveRequestMappingInfo(Method method, String x) {
-        Annotation[] annotations = method.getAnnotations();
-        String[] path = null;
-        String[] headers = null;
-        String[] consumes = null;
-        String[] params = null;
-        String[] produces = null;
-        RequestMethod[] methods = null;
-
-        for (Annotation anno : annotations) {
-            if (anno instanceof GetMapping) {
-                GetMapping get = (GetMapping) anno;
-                path = get.value();
-                headers = get.headers();
-                consumes = get.consumes();
-                params = get.params();
-                produces = get.produces();
-                methods = new RequestMethod[]{RequestMethod.GET};
-            }
-            if (anno instanceof PostMapping) {
-                PostMapping post = (PostMapping) anno;
-                path = post.value();
-                headers = post.headers();
-                consumes = post.consumes();
-                params = post.params();
-                produces = post.produces();
-                methods = new RequestMethod[]{RequestMethod.POST};
-            }
-            if (anno instanceof PutMapping) {
-                PutMapping put = (PutMapping) anno;
-                path = put.value();
-                headers = put.headers();
-                consumes = put.consumes();
-                params = put.params();
-                produces = put.produces();
-                methods = new RequestMethod[]{RequestMethod.PUT};
-            }
-            if (anno instanceof DeleteMapping) {
-                DeleteMapping delete = (DeleteMapping) anno;
-                path = delete.value();
-                headers = delete.headers();
-                consumes = delete.consumes();
-                params = delete.params();
-                produces = delete.produces();
-                methods = new RequestMethod[]{RequestMethod.DELETE};
-            }
-            if (anno instanceof RequestMapping) {
-                RequestMapping request = (RequestMapping) anno;
-                path = request.value();
-                headers = request.headers();
-                consumes = request.consumes();
-                params = request.params();
-                produces = request.produces();
-                methods = ArrayUtils.isEmpty(request.method())
-                        ? new RequestMethod[]{RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE}
-                        : request.method();
-            }
+        return resolveRequestMappingInfo(method, x, DEFAULT_BUILDER_CONFIGURATION);
+    }
+
+    /**
+     * @param x       路径前缀
+     * @param options 与宿主 handler mapping 相同的构建配置
+     * @return 方法 -> RequestMappingInfo
+     */
+    public Map<Method, RequestMappingInfo> resolveRequestMappingInfos(String x, RequestMappingInfo.BuilderConfiguration options) {
+        Map<Method, RequestMappingInfo> infos = new LinkedHashMap<>();
+        for (Method method : mappingMethods) {
+            infos.put(method, resolveRequestMappingInfo(method, x, options));
         }
-        String[] finalPath = finalPath(path, x);
+        return infos;
+    }
+
+    public RequestMappingInfo resolveRequestMappingInfo(Method method, String x, RequestMappingInfo.BuilderConfiguration options) {
+        RequestMapping mapping = methodMappings.get(method);
+        if (mapping == null) {
+            throw new IllegalArgumentException(String.format("%s is not a request mapping method of %s", method, cls().getName()));
+        }
+        String[] finalPath = finalPath(mapping.path(), x);
         logger.debug("method: {}.{} final path: {}",
                 method.getDeclaringClass().getName(), method.getName(),
                 Stream.of(finalPath).collect(Collectors.joining(",")));
         return RequestMappingInfo
                 .paths(finalPath)
-                .consumes(consumes)
-                .headers(headers)
-                .params(params)
-                .produces(produces)
-                .methods(methods)
-                .options(defaultBuilderConfiguration())
+                .consumes(mapping.consumes())
+                .headers(mapping.headers())
+                .params(mapping.params())
+                .produces(mapping.produces())
+                .methods(ArrayUtils.isEmpty(mapping.method()) ? DEFAULT_METHODS : mapping.method())
+                .mappingName(StringUtils.isEmpty(mapping.name()) ? null : mapping.name())
+                .options(options)
                 .build();
     }
 
 
-
-    private RequestMappingInfo.BuilderConfiguration defaultBuilderConfiguration() {
-        if (defaultBuilderConfiguration != null) {
-            return defaultBuilderConfiguration;
-        }
-        defaultBuilderConfiguration = new RequestMappingInfo.BuilderConfiguration();
-        defaultBuilderConfiguration.setPatternParser(new PathPatternParser());
-        defaultBuilderConfiguration.setPathMatcher(new AntPathMatcher());
-        return defaultBuilderConfiguration;
+    private static RequestMappingInfo.BuilderConfiguration defaultBuilderConfiguration() {
+        RequestMappingInfo.BuilderConfiguration configuration = new RequestMappingInfo.BuilderConfiguration();
+        configuration.setPatternParser(new PathPatternParser());
+        configuration.setPathMatcher(new AntPathMatcher());
+        return configuration;
     }
 
     public String[] finalPath(String[] current, String x) {
-        String[] onClass = notNull(ArrayUtils.isEmpty(requestMapping.value()) ? requestMapping.path() : requestMapping.value());
+        String[] onClass = notNull(requestMapping.path());
         String[] onMethod = notNull(current);
         List<String> ret = new ArrayList<>();
         for (String s : onClass) {
@@ -1,5 +1,6 @@
 package org.wep.plugins;
 
+import org.pf4j.PluginClassLoader;
 import org.wep.utils.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,82 +9,301 @@ import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ControllerProcessor implements BeanProcessor<ControllerBeanDefinition> {
     private static final Logger logger = LoggerFactory.getLogger(ControllerProcessor.class);
     private final PluginApplication pluginApplication;
     private final PluginProperties properties;
     private RequestMappingHandlerMapping requestMappingHandlerMapping;
+    /**
+     * 插件id -> 插件注册的 mapping, 注册和注销只涉及插件自己的方法
+     */
+    private final ConcurrentHashMap<String, Map<Method, ControllerMapping>> registrations = new ConcurrentHashMap<>();
+    /**
+     * handler 方法 -> 插件id, 和 registrations 同步维护, 请求时按方法直接查到所属插件
+     */
+    private final ConcurrentHashMap<Method, String> owners = new ConcurrentHashMap<>();
+    private Map<Method, RequestMappingInfo> detectedMappings;
+    private PluginHandlerMapping pluginHandlerMapping;
+    private RequestMappingInfo.BuilderConfiguration builderConfiguration;
+    /**
+     * 插件id -> 已解析的 RequestMappingInfo, 插件重启时复用, 插件卸载时清除
+     */
+    private final ConcurrentHashMap<String, Map<Method, RequestMappingInfo>> mappingInfos = new ConcurrentHashMap<>();
+    /**
+     * 插件id -> 启动过程中创建的controller, 插件的controller全部创建后一次注册
+     */
+    private final ConcurrentHashMap<String, Map<ControllerBeanDefinition, Object>> pending = new ConcurrentHashMap<>();
 
     public ControllerProcessor(PluginApplication pluginApplication, PluginProperties properties) {
         this.pluginApplication = pluginApplication;
         this.properties = properties;
     }
 
-    protected RequestMappingHandlerMapping initMappingHandler() {
+    protected synchronized RequestMappingHandlerMapping initMappingHandler() {
         if (this.requestMappingHandlerMapping != null) {
             return requestMappingHandlerMapping;
         }
-        this.requestMappingHandlerMapping = pluginApplication.getBean("requestMappingHandlerMapping");
+        RequestMappingHandlerMapping mapping = pluginApplication.getBean("requestMappingHandlerMapping");
+        this.detectedMappings = detectPluginMappings(mapping);
+        if (properties.isDedicatedHandlerMapping()) {
+            this.pluginHandlerMapping = pluginApplication.getBean(PluginHandlerMapping.class);
+            pluginHandlerMapping.configureFrom(mapping);
+            this.builderConfiguration = pluginHandlerMapping.getBuilderConfiguration();
+        } else {
+            this.builderConfiguration = mapping.getBuilderConfiguration();
+        }
+        this.requestMappingHandlerMapping = mapping;
         return this.requestMappingHandlerMapping;
     }
 
+    /**
+     * 宿主 handler mapping 初始化时会注册当时已存在的插件controller(没有路径前缀),
+     * 只在这里遍历一次宿主的 mapping
+     */
+    private Map<Method, RequestMappingInfo> detectPluginMappings(RequestMappingHandlerMapping mapping) {
+        Map<Method, RequestMappingInfo> detected = new ConcurrentHashMap<>();
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : mapping.getHandlerMethods().entrySet()) {
+            Method method = entry.getValue().getMethod();
+            if (method.getDeclaringClass().getClassLoader() instanceof PluginClassLoader) {
+                detected.put(method, entry.getKey());
+            }
+        }
+        return detected;
+    }
+
 
+    /**
+     * 插件启动过程中创建的controller先暂存, 由 endRegistration 批量注册, 其它时候按需创建的立即注册
+     */
     @Override
     public Object resolveBean(ControllerBeanDefinition definition, Object bean) {
-        initMappingHandler();
-        Map<RequestMappingInfo, HandlerMethod> handlerMethods = this.requestMappingHandlerMapping.getHandlerMethods();
-        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
-            refreshController(bean, definition, entry);
+        if (pending.computeIfPresent(definition.pluginId(), (k, batch) -> {
+            batch.put(definition, bean);
+            return batch;
+        }) == null) {
+            registerController(definition, bean);
         }
         return bean;
     }
 
-    private void refreshController(Object bean, ControllerBeanDefinition definition, Map.Entry<RequestMappingInfo, HandlerMethod> entry) {
-        String prefix = refreshMappingPath(definition);
-        if (definition.match(entry)) {
-            Method method = entry.getValue().getMethod();
-            unregisterController(entry.getKey());
-            definition.resolveRequestMappingInfo(entry, prefix)
-                    .ifPresent(mapping -> registerController(mapping, bean, method));
+    /**
+     * controller 只在初始化完成后注册, 注册的是最终暴露的bean
+     */
+    @Override
+    public boolean afterInitializationOnly() {
+        return true;
+    }
+
+    /**
+     * 开始暂存插件创建的controller
+     */
+    public void beginRegistration(String pluginId) {
+        pending.putIfAbsent(pluginId, new LinkedHashMap<>());
+    }
+
+    /**
+     * 一次注册插件暂存的controller, 任何一个失败时整个插件的路由回滚
+     */
+    public void endRegistration(String pluginId) {
+        Map<ControllerBeanDefinition, Object> batch = pending.remove(pluginId);
+        if (batch != null && !batch.isEmpty()) {
+            registerControllers(batch);
         }
     }
 
-    private void registerController(RequestMappingInfo mapping, Object bean, Method method) {
-        logger.info("register controller: {}", mapping);
-        this.requestMappingHandlerMapping.registerMapping(mapping, bean, method);
+    /**
+     * 丢弃插件暂存的controller, 插件启动失败或停止时调用
+     */
+    public void cancelRegistration(String pluginId) {
+        pending.remove(pluginId);
+    }
+
+    private void registerController(ControllerMapping mapping) {
+        logger.info("register controller: {}", mapping.info);
+        this.requestMappingHandlerMapping.registerMapping(mapping.info, mapping.handler, mapping.method);
     }
 
     private void unregisterController(RequestMappingInfo mapping) {
+        if (mapping == null) {
+            return;
+        }
         logger.info("unregister controller: {}", mapping);
         this.requestMappingHandlerMapping.unregisterMapping(mapping);
     }
 
     public void registerController(ControllerBeanDefinition definition, Object bean) {
+        registerControllers(Collections.singletonMap(definition, bean));
+    }
+
+    public void unregisterController(ControllerBeanDefinition definition) {
+        unregisterControllers(Collections.singletonList(definition));
+    }
+
+    /**
+     * 批量注册controller: 先在锁外算好全部 mapping, 再在一次加锁内完成替换,
+     * 任何一个 mapping 注册失败时回滚本批次并恢复旧的 mapping
+     *
+     * @param controllers bean定义 -> controller bean
+     */
+    public void registerControllers(Map<ControllerBeanDefinition, Object> controllers) {
         initMappingHandler();
-        String prefix = refreshMappingPath(definition);
-        definition.getMappingMethods().stream()
-                .forEach(m -> {
-                    RequestMappingInfo mapping = definition.resolveRequestMappingInfo(m, prefix);
-                    logger.info("register controller: {}", mapping);
-                    this.requestMappingHandlerMapping.registerMapping(mapping, bean, m);
+        List<ControllerMapping> mappings = new ArrayList<>();
+        for (Map.Entry<ControllerBeanDefinition, Object> entry : controllers.entrySet()) {
+            ControllerBeanDefinition definition = entry.getKey();
+            String prefix = refreshMappingPath(definition);
+            Map<Method, RequestMappingInfo> infos = mappingInfos(definition, prefix);
+            for (Method method : definition.getMappingMethods()) {
+                mappings.add(new ControllerMapping(definition.pluginId(), prefix,
+                        infos.get(method), entry.getValue(), method));
+            }
+        }
+        synchronized (this) {
+            if (pluginHandlerMapping != null) {
+                registerRoutes(mappings);
+                return;
+            }
+            List<ControllerMapping> replaced = new ArrayList<>();
+            Map<RequestMappingInfo, HandlerMethod> removedDetected = new LinkedHashMap<>();
+            Map<RequestMappingInfo, HandlerMethod> handlerMethods = null;
+            for (ControllerMapping mapping : mappings) {
+                RequestMappingInfo detected = detectedMappings.remove(mapping.method);
+                if (detected != null) {
+                    if (handlerMethods == null) {
+                        handlerMethods = requestMappingHandlerMapping.getHandlerMethods();
+                    }
+                    removedDetected.put(detected, handlerMethods.get(detected));
+                }
+                unregisterController(detected);
+                ControllerMapping old = registered(mapping.pluginId).remove(mapping.method);
+                if (old != null) {
+                    unregisterController(old.info);
+                    replaced.add(old);
+                }
+            }
+            List<ControllerMapping> installed = new ArrayList<>();
+            try {
+                for (ControllerMapping mapping : mappings) {
+                    registerController(mapping);
+                    installed.add(mapping);
+                }
+            } catch (RuntimeException e) {
+                logger.error("error in register controllers, rollback {} mappings", installed.size(), e);
+                installed.forEach(m -> unregisterController(m.info));
+                replaced.forEach(old -> {
+                    registerController(old);
+                    track(old);
+                });
+                // 宿主 handler mapping 初始化时检测到的 mapping 也恢复
+                removedDetected.forEach((info, handlerMethod) -> {
+                    if (handlerMethod != null) {
+                        requestMappingHandlerMapping.registerMapping(info, handlerMethod.getBean(), handlerMethod.getMethod());
+                        detectedMappings.put(handlerMethod.getMethod(), info);
+                    }
                 });
+                throw e;
+            }
+            installed.forEach(this::track);
+        }
     }
 
-    public void unregisterController(ControllerBeanDefinition definition) {
+    /**
+     * 使用插件专用的 handler mapping 时, 每个路径前缀的路由表整体替换
+     */
+    private void registerRoutes(List<ControllerMapping> mappings) {
+        Map<String, List<PluginHandlerMapping.Route>> routes = new LinkedHashMap<>();
+        for (ControllerMapping mapping : mappings) {
+            unregisterController(detectedMappings.remove(mapping.method));
+            logger.info("register plugin route: {}", mapping.info);
+            routes.computeIfAbsent(mapping.prefix, k -> new ArrayList<>())
+                    .add(new PluginHandlerMapping.Route(mapping.info, mapping.handler, mapping.method));
+        }
+        routes.forEach(pluginHandlerMapping::register);
+        mappings.forEach(this::track);
+    }
+
+    /**
+     * 批量注销controller, 只涉及这些bean定义自己的方法
+     */
+    public void unregisterControllers(Collection<ControllerBeanDefinition> definitions) {
         initMappingHandler();
-        Map<RequestMappingInfo, HandlerMethod> handlerMethods = this.requestMappingHandlerMapping.getHandlerMethods();
-        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
-            if (definition.match(entry)) {
-                unregisterController(entry.getKey());
+        synchronized (this) {
+            Map<String, List<Method>> routes = new LinkedHashMap<>();
+            for (ControllerBeanDefinition definition : definitions) {
+                pending.remove(definition.pluginId());
+                Map<Method, ControllerMapping> registered = registrations.get(definition.pluginId());
+                for (Method method : definition.getMappingMethods()) {
+                    unregisterController(detectedMappings.remove(method));
+                    ControllerMapping old = registered == null ? null : registered.remove(method);
+                    if (old == null) {
+                        continue;
+                    }
+                    owners.remove(method, old.pluginId);
+                    if (pluginHandlerMapping != null) {
+                        routes.computeIfAbsent(old.prefix, k -> new ArrayList<>()).add(method);
+                    } else {
+                        unregisterController(old.info);
+                    }
+                }
+                if (registered != null && registered.isEmpty()) {
+                    registrations.remove(definition.pluginId(), registered);
+                }
             }
+            routes.forEach((prefix, methods) -> {
+                logger.info("unregister plugin routes: {} {}", prefix, methods.size());
+                pluginHandlerMapping.unregister(prefix, methods);
+            });
         }
     }
 
+    private Map<Method, RequestMappingInfo> mappingInfos(ControllerBeanDefinition definition, String prefix) {
+        Map<Method, RequestMappingInfo> infos = mappingInfos.computeIfAbsent(definition.pluginId(), k -> new ConcurrentHashMap<>());
+        if (!infos.keySet().containsAll(definition.getMappingMethods())) {
+            infos.putAll(definition.resolveRequestMappingInfos(prefix, builderConfiguration));
+        }
+        return infos;
+    }
+
+    /**
+     * 插件卸载后类加载器失效, 清除缓存的 RequestMappingInfo
+     */
+    public void evictMappingInfos(String pluginId) {
+        mappingInfos.remove(pluginId);
+    }
+
+    /**
+     * @return 插件当前注册的路由数
+     */
+    public int getRouteCount(String pluginId) {
+        Map<Method, ControllerMapping> registered = registrations.get(pluginId);
+        return registered == null ? 0 : registered.size();
+    }
+
+    /**
+     * @return handler 方法所属的插件id, 不是插件注册的路由时返回 null
+     */
+    public String getPluginId(Method method) {
+        return owners.get(method);
+    }
+
+    private void track(ControllerMapping mapping) {
+        registered(mapping.pluginId).put(mapping.method, mapping);
+        owners.put(mapping.method, mapping.pluginId);
+    }
+
+    private Map<Method, ControllerMapping> registered(String pluginId) {
+        return registrations.computeIfAbsent(pluginId, k -> new ConcurrentHashMap<>());
+    }
+
 
     public String refreshMappingPath(PluginBeanDefinition definition) {
-        String contextPath = properties.getPluginRestPathPrefix();
         String pluginId = definition.pluginId();
         PathPrefix annotation = definition.cls().getAnnotation(PathPrefix.class);
         if (annotation != null) {
@@ -92,6 +312,15 @@ public class ControllerProcessor implements BeanProcessor<ControllerBeanDefiniti
                 throw new IllegalArgumentException("empty rest PathPrefix: " + definition.cls().getName());
             }
         }
+        return refreshMappingPath(pluginId);
+    }
+
+    /**
+     * @param pluginId 插件id 或 @PathPrefix 的值
+     * @return 插件的路径前缀
+     */
+    public String refreshMappingPath(String pluginId) {
+        String contextPath = properties.getPluginRestPathPrefix();
         if (properties.isEnablePluginIdRestPathPrefix()) {
             if (contextPath != null && !"".equals(contextPath)) {
                 contextPath = joiningPath(contextPath, pluginId);
@@ -125,4 +354,19 @@ public class ControllerProcessor implements BeanProcessor<ControllerBeanDefiniti
         }
     }
 
+    private static class ControllerMapping {
+        private final String pluginId;
+        private final String prefix;
+        private final RequestMappingInfo info;
+        private final Object handler;
+        private final Method method;
+
+        private ControllerMapping(String pluginId, String prefix, RequestMappingInfo info, Object handler, Method method) {
+            this.pluginId = pluginId;
+            this.prefix = prefix;
+            this.info = info;
+            this.handler = handler;
+            this.method = method;
+        }
+    }
 }
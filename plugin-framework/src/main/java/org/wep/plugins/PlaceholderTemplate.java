@@ -0,0 +1,86 @@
+package org.wep.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 预编译的占位符模板, 把 "a${x}b${y}" 拆成 文本/占位符 片段, 解析时顺序拼接, 不再使用正则
+ * 占位符没有对应的值时保留原样 ${x}
+ */
+public class PlaceholderTemplate {
+    private static final String PREFIX = "${";
+    private static final String SUFFIX = "}";
+    private static final PlaceholderTemplate EMPTY = new PlaceholderTemplate("", Collections.emptyList());
+
+    private final String source;
+    /**
+     * 偶数位置是文本, 奇数位置是占位符名称
+     */
+    private final List<String> segments;
+
+    private PlaceholderTemplate(String source, List<String> segments) {
+        this.source = source;
+        this.segments = segments;
+    }
+
+    public static PlaceholderTemplate compile(String source) {
+        if (source == null || source.isEmpty()) {
+            return EMPTY;
+        }
+        int start = source.indexOf(PREFIX);
+        if (start == -1) {
+            return new PlaceholderTemplate(source, Collections.emptyList());
+        }
+        List<String> segments = new ArrayList<>();
+        int from = 0;
+        while (start != -1) {
+            int end = source.indexOf(SUFFIX, start + PREFIX.length());
+            if (end == -1) {
+                break;
+            }
+            segments.add(source.substring(from, start));
+            segments.add(source.substring(start + PREFIX.length(), end));
+            from = end + SUFFIX.length();
+            start = source.indexOf(PREFIX, from);
+        }
+        if (segments.isEmpty()) {
+            return new PlaceholderTemplate(source, Collections.emptyList());
+        }
+        segments.add(source.substring(from));
+        return new PlaceholderTemplate(source, Collections.unmodifiableList(segments));
+    }
+
+    public boolean hasPlaceholder() {
+        return !segments.isEmpty();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @param lookup 占位符名称 -> 值, 没有值时返回null或空字符串
+     */
+    public String resolve(Function<String, String> lookup) {
+        if (segments.isEmpty()) {
+            return source;
+        }
+        StringBuilder builder = new StringBuilder(source.length());
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if ((i & 1) == 0) {
+                builder.append(segment);
+                continue;
+            }
+            String value = lookup.apply(segment);
+            if (value == null || value.isEmpty()) {
+                builder.append(PREFIX).append(segment).append(SUFFIX);
+            } else {
+                builder.append(value);
+            }
+        }
+        return builder.toString();
+    }
+}
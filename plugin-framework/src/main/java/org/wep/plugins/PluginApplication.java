@@ -2,54 +2,105 @@ package org.wep.plugins;
 
 import org.wep.plugins.state.PluginStateChangeListener;
 import org.wep.plugins.state.StateEvent;
+import org.wep.plugins.state.StateEventBus;
 import org.wep.utils.AnnotationUtils;
 import org.wep.utils.CollectionUtils;
 import org.wep.utils.StringUtils;
 import org.pf4j.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Repository;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class PluginApplication implements PluginStateListener {
+public class PluginApplication implements PluginStateListener, DisposableBean, SmartInitializingSingleton {
     Logger logger = LoggerFactory.getLogger("PluginApplication");
     private final ApplicationContext applicationContext;
     private final DefaultListableBeanFactory beanFactory;
     private final PluginProperties properties;
     private final PluginBeanDefinitionFactory definitionFactory = new PluginBeanDefinitionFactory();
     private final ConcurrentHashMap<String, List<PluginBeanDefinition>> beanDefinitions;
+    /**
+     * bean name -> 插件bean定义, 用于bean后处理时的快速查找
+     */
+    private final ConcurrentHashMap<String, PluginBeanDefinition> beanNameDefinitions;
+    /**
+     * bean class -> 插件bean定义, 一个类注册多次时为第一个定义, 按名称查找可以区分
+     */
+    private final ConcurrentHashMap<Class<?>, PluginBeanDefinition> beanClassDefinitions;
     private final ConcurrentHashMap<String, File> configs;
-    private final Collection<PluginStateChangeListener> stateChangeListeners;
+    private final StateEventBus eventBus;
+    private final PluginRequestTracker requestTracker;
     private final ControllerProcessor controllerProcessor;
+    private final ConfigProcessor configProcessor;
+    private final PluginResourceAccounting resourceAccounting;
+    private ConfigWatcher configWatcher;
+    private volatile PluginMetrics metrics = PluginMetrics.NONE;
+    /**
+     * 插件id -> 打开的插件jar
+     */
+    private final Map<String, PluginResources> resources = new ConcurrentHashMap<>();
+    /**
+     * 插件id -> 当前状态的 PluginInfo, 插件状态变化时重建
+     */
+    private final Map<String, PluginInfo> pluginInfos = new ConcurrentHashMap<>();
+    private final AtomicLong pluginVersion = new AtomicLong();
+    private volatile Descriptors descriptors;
     private PluginManager pluginManager;
+    /**
+     * 并行启动时, 插件id -> 提前在线程池中执行的扫描和类加载, pf4j 的监听器线程读取
+     */
+    private volatile Map<String, CompletableFuture<PreparedStart>> preparedStarts;
+    /**
+     * 优雅停止时并行销毁bean的线程池, 各次停止共用, 空闲的线程会自动退出
+     */
+    private final ForkJoinPool stopPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
     public PluginApplication(ApplicationContext applicationContext, PluginProperties properties) {
         this.applicationContext = applicationContext;
         this.properties = properties;
         this.beanFactory = (DefaultListableBeanFactory) applicationContext.getAutowireCapableBeanFactory();
         this.beanDefinitions = new ConcurrentHashMap<>();
+        this.beanNameDefinitions = new ConcurrentHashMap<>();
+        this.beanClassDefinitions = new ConcurrentHashMap<>();
         this.configs = new ConcurrentHashMap<>();
-        this.stateChangeListeners = new ArrayList<>();
+        this.eventBus = new StateEventBus(properties.isAsyncStateEvents(), properties.getStateEventQueueCapacity());
         this.controllerProcessor = new ControllerProcessor(this, properties);
+        this.configProcessor = new ConfigProcessor(this);
+        this.requestTracker = new PluginRequestTracker(this);
+        this.resourceAccounting = new PluginResourceAccounting(properties);
     }
 
     public String getPluginPath() {
@@ -57,43 +108,161 @@ public class PluginApplication implements PluginStateListener {
     }
 
     public void addListener(PluginStateChangeListener listener) {
-        stateChangeListeners.add(listener);
+        eventBus.register(listener);
+    }
+
+    /**
+     * @param async 是否异步投递, 不使用 plugin.async-state-events 的配置
+     */
+    public void addListener(PluginStateChangeListener listener, boolean async) {
+        eventBus.register(listener, async);
     }
 
     public void addListeners(Collection<PluginStateChangeListener> listeners) {
-        stateChangeListeners.addAll(listeners);
+        listeners.forEach(eventBus::register);
     }
 
+    public PluginRequestTracker getRequestTracker() {
+        return requestTracker;
+    }
+
+    public StateEventBus getEventBus() {
+        return eventBus;
+    }
+
+    public PluginResourceAccounting getResourceAccounting() {
+        return resourceAccounting;
+    }
+
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 需要在 init 之前设置, 才能记录到启动时加载的插件
+     */
+    public void setMetrics(PluginMetrics metrics) {
+        this.metrics = metrics == null ? PluginMetrics.NONE : metrics;
+        this.metrics.bindTo(this);
+    }
+
+    /**
+     * @return 不可变的插件列表, 插件状态没有变化时返回同一个列表
+     */
     public List<PluginInfo> getPluginDescriptors() {
-        return pluginManager.getPlugins().stream().map(PluginInfo::new).collect(Collectors.toList());
+        long version = pluginVersion.get();
+        Descriptors snapshot = descriptors;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.infos;
+        }
+        List<PluginInfo> infos = Collections.unmodifiableList(pluginManager.getPlugins().stream()
+                .map(this::pluginInfo)
+                .collect(Collectors.toList()));
+        descriptors = new Descriptors(version, infos);
+        return infos;
+    }
+
+    public Optional<PluginInfo> getPluginInfo(String pluginId) {
+        PluginWrapper plugin = pluginManager.getPlugin(pluginId);
+        return plugin == null ? Optional.empty() : Optional.of(pluginInfo(plugin));
+    }
+
+    /**
+     * 缓存的快照与插件当前状态一致时直接返回, 否则重建
+     */
+    PluginInfo pluginInfo(PluginWrapper plugin) {
+        PluginInfo info = pluginInfos.get(plugin.getPluginId());
+        if (info != null && info.getState().equals(plugin.getPluginState().name())) {
+            return info;
+        }
+        info = new PluginInfo(plugin);
+        pluginInfos.put(plugin.getPluginId(), info);
+        return info;
+    }
+
+    public ControllerProcessor getControllerProcessor() {
+        return controllerProcessor;
+    }
+
+    public ConfigProcessor getConfigProcessor() {
+        return configProcessor;
     }
 
     public Environment getEnv() {
         return applicationContext.getEnvironment();
     }
 
+    /**
+     * @return 插件或资源不存在、读取失败时返回空数组
+     */
     public byte[] getPluginEntry(String pluginId, String name) {
-        return pluginManager.getPlugins().stream()
-                .filter(p -> p.getPluginId().equals(pluginId))
-                .findAny()
-                .map(p -> {
-                    try {
-                        Path pluginPath = p.getPluginPath();
-                        JarFile jar = new JarFile(pluginPath.toFile());
-                        Enumeration<JarEntry> en = jar.entries();
-                        while (en.hasMoreElements()) {
-                            JarEntry je = en.nextElement();
-                            String n = je.getName();
-                            if (n.equals(name)) {
-                                return readEntry(jar, je);
-                            }
+        Optional<PluginResources> resources = getPluginResources(pluginId);
+        if (!resources.isPresent()) {
+            return new byte[]{};
+        }
+        try {
+            return resources.get().getBytes(name).orElse(new byte[]{});
+        } catch (IOException e) {
+            logger.error("", e);
+        }
+        return new byte[]{};
+    }
 
-                        }
-                    } catch (Exception e) {
-                        logger.error("", e);
-                    }
-                    return null;
-                }).orElse(new byte[]{});
+    /**
+     * @return 资源的输入流, 由调用方关闭
+     */
+    public Optional<InputStream> getPluginEntryStream(String pluginId, String name) throws IOException {
+        Optional<PluginResources> resources = getPluginResources(pluginId);
+        return resources.isPresent() ? resources.get().getInputStream(name) : Optional.empty();
+    }
+
+    public Optional<ByteBuffer> getPluginEntryBuffer(String pluginId, String name) throws IOException {
+        Optional<PluginResources> resources = getPluginResources(pluginId);
+        return resources.isPresent() ? resources.get().getByteBuffer(name) : Optional.empty();
+    }
+
+    /**
+     * 把插件中的资源直接写入 out, 不经过中间的字节数组
+     *
+     * @return 写入的字节数, 插件或资源不存在时为 -1
+     */
+    public long transferPluginEntry(String pluginId, String name, OutputStream out) throws IOException {
+        Optional<PluginResources> resources = getPluginResources(pluginId);
+        return resources.isPresent() ? resources.get().transferTo(name, out) : -1;
+    }
+
+    /**
+     * 插件的资源在第一次访问时打开, 插件停止后关闭
+     */
+    public Optional<PluginResources> getPluginResources(String pluginId) {
+        PluginWrapper plugin = pluginManager.getPlugin(pluginId);
+        if (plugin == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(resources.computeIfAbsent(pluginId, id -> {
+                try {
+                    return PluginResources.open(plugin.getPluginPath());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            logger.error("error in open plugin: {}", pluginId, e.getCause());
+        }
+        return Optional.empty();
+    }
+
+    private void closeResources(String pluginId) {
+        PluginResources removed = resources.remove(pluginId);
+        if (removed == null) {
+            return;
+        }
+        try {
+            removed.close();
+        } catch (IOException e) {
+            logger.warn("error in close plugin: {}", pluginId, e);
+        }
     }
 
     public <T> Collection<T> getBeans(Class<T> clz) {
@@ -117,13 +286,23 @@ public class PluginApplication implements PluginStateListener {
     }
 
     public Collection<PluginEntry<?>> entries(EntryWrapper<?> wrapper) throws IOException, PluginException {
-        List<PluginEntry<?>> entries = new ArrayList<>();
-        for (PluginWrapper plugin : pluginManager.getPlugins()) {
-            for (JarEntry entry : entries(plugin, wrapper)) {
-                entries.add(wrapper.wrap(new PluginInfo(plugin), entry));
-            }
+        try (Stream<PluginEntry<?>> entries = streamEntries(wrapper)) {
+            return entries.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (PluginEntrySpliterator.EntryException e) {
+            throw e.getCause();
         }
-        return entries;
+    }
+
+    /**
+     * 懒加载的插件条目, 遍历到某个插件时才打开它的jar, 遍历完立即关闭
+     * 使用完需要关闭(try-with-resources)以关闭提前结束时仍打开的jar, 可以按插件并行
+     * 读取jar失败时抛出 UncheckedIOException
+     */
+    public Stream<PluginEntry<?>> streamEntries(EntryWrapper<?> wrapper) {
+        PluginEntrySpliterator spliterator = new PluginEntrySpliterator(new ArrayList<>(pluginManager.getPlugins()), wrapper, this::pluginInfo);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
     }
 
     /**
@@ -133,7 +312,8 @@ public class PluginApplication implements PluginStateListener {
      */
     public PluginInfo install(File file) throws PluginException {
         String pluginId = pluginManager.loadPlugin(file.toPath());
-        return new PluginInfo(pluginManager.getPlugin(pluginId));
+        pluginVersion.incrementAndGet();
+        return pluginInfo(pluginManager.getPlugin(pluginId));
     }
 
     private PluginWrapper get(String id) throws PluginException {
@@ -163,10 +343,171 @@ public class PluginApplication implements PluginStateListener {
 
     public void init() {
         resolveConfigs();
-        pluginManager = new DefaultPluginManager(new File(properties.getPluginPath()).toPath());
+        pluginManager = new DefaultPluginManager(new File(properties.getPluginPath()).toPath()) {
+            /**
+             * pf4j 3.11 的 stopPlugin 把 STOPPED 作为旧状态发布事件, 新旧状态相同的事件会被丢弃,
+             * 监听器收不到停止事件; stopPlugin 只停止 STARTED 的插件, 这里还原旧状态
+             */
+            @Override
+            protected void firePluginStateEvent(PluginStateEvent event) {
+                if (event.getPluginState() == PluginState.STOPPED && event.getOldState() == PluginState.STOPPED) {
+                    event = new PluginStateEvent(this, event.getPlugin(), PluginState.STARTED);
+                }
+                super.firePluginStateEvent(event);
+            }
+
+            /**
+             * 优雅停止时在调用插件的 stop() 之前注销路由并等待请求处理完, 停止依赖方时也会经过这里
+             * stopPlugin 不持有 pf4j 的锁, 等待期间不阻塞其它插件的状态切换
+             */
+            @Override
+            protected PluginState stopPlugin(String pluginId, boolean stopDependents) {
+                quiesceIfStarted(getPlugin(pluginId));
+                return super.stopPlugin(pluginId, stopDependents);
+            }
+
+            /**
+             * 开启扩展统计时, getExtensions 返回的扩展同样以代理统计调用
+             */
+            @Override
+            protected ExtensionFactory createExtensionFactory() {
+                ExtensionFactory factory = super.createExtensionFactory();
+                return new ExtensionFactory() {
+                    @Override
+                    public <T> T create(Class<T> extensionClass) {
+                        T extension = factory.create(extensionClass);
+                        PluginWrapper plugin = extension == null ? null : whichPlugin(extensionClass);
+                        return plugin == null ? extension : resourceAccounting.proxyExtension(plugin.getPluginId(), extension);
+                    }
+                };
+            }
+
+            @Override
+            public void stopPlugins() {
+                List<PluginWrapper> started = new ArrayList<>(getStartedPlugins());
+                Collections.reverse(started);
+                started.forEach(PluginApplication.this::quiesceIfStarted);
+                super.stopPlugins();
+            }
+        };
         pluginManager.addPluginStateListener(this);
         pluginManager.loadPlugins();
-        pluginManager.startPlugins();
+        if (properties.isParallelStartup()) {
+            startPluginsInParallel();
+        } else {
+            pluginManager.startPlugins();
+        }
+        watchConfigs();
+    }
+
+    private void watchConfigs() {
+        String pluginConfigFilePath = this.properties.getPluginConfigFilePath();
+        if (!properties.isConfigHotReload() || StringUtils.isEmpty(pluginConfigFilePath)) {
+            return;
+        }
+        File directory = new File(pluginConfigFilePath);
+        if (!directory.isDirectory()) {
+            logger.warn("plugin config path is not a directory: {}", pluginConfigFilePath);
+            return;
+        }
+        try {
+            configWatcher = new ConfigWatcher(directory.toPath(), properties.getConfigReloadDebounceMillis(), this::reloadConfig);
+            configWatcher.start();
+        } catch (IOException e) {
+            logger.error("error in watch plugin config: {}", pluginConfigFilePath, e);
+        }
+    }
+
+    /**
+     * 配置文件变化后在原有的 @Config bean 上重新绑定, 不重启插件
+     *
+     * @param file 变化的配置文件
+     */
+    public void reloadConfig(File file) {
+        configs.put(file.getName(), file);
+        configProcessor.evict(file);
+        beanDefinitions.forEach((pluginId, definitions) -> {
+            List<Object> beans = new ArrayList<>();
+            for (PluginBeanDefinition definition : definitions) {
+                if (!(definition instanceof ConfigBeanDefinition)
+                        || !file.getName().equals(((ConfigBeanDefinition) definition).getConfigFileName())) {
+                    continue;
+                }
+                Object bean = beanFactory.getSingleton(definition.beanName(beanFactory));
+                if (bean != null) {
+                    beans.add(configProcessor.rebind(bean, file));
+                }
+            }
+            PluginWrapper plugin = pluginManager.getPlugin(pluginId);
+            if (!beans.isEmpty() && plugin != null) {
+                logger.info("{} config changed: {}", pluginId, file.getName());
+                eventBus.publish(StateEvent.configChange(pluginInfo(plugin), beans));
+            }
+        });
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (configWatcher != null) {
+            configWatcher.close();
+        }
+        new ArrayList<>(resources.keySet()).forEach(this::closeResources);
+        stopPool.shutdown();
+        eventBus.close();
+    }
+
+    /**
+     * 插件的扫描、类加载在线程池中按依赖关系并行执行, pf4j 仍然按依赖顺序串行启动插件,
+     * 插件启动时等待自己的扫描和类加载完成后注册bean, 插件 start() 和启动事件的顺序与串行启动一致
+     */
+    private void startPluginsInParallel() {
+        Map<String, PluginWrapper> plugins = new LinkedHashMap<>();
+        for (PluginWrapper plugin : pluginManager.getResolvedPlugins()) {
+            if (plugin.getPluginState() != PluginState.DISABLED) {
+                plugins.put(plugin.getPluginId(), plugin);
+            }
+        }
+        int parallelism = properties.getStartupParallelism() > 0
+                ? properties.getStartupParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Map<String, CompletableFuture<PreparedStart>> scheduled = new HashMap<>();
+            for (PluginWrapper plugin : plugins.values()) {
+                schedule(plugin, plugins, scheduled, pool);
+            }
+            preparedStarts = scheduled;
+            pluginManager.startPlugins();
+        } finally {
+            preparedStarts = null;
+            pool.shutdown();
+        }
+    }
+
+    private CompletableFuture<PreparedStart> schedule(PluginWrapper plugin, Map<String, PluginWrapper> plugins,
+                                                      Map<String, CompletableFuture<PreparedStart>> scheduled, Executor executor) {
+        CompletableFuture<PreparedStart> future = scheduled.get(plugin.getPluginId());
+        if (future != null) {
+            return future;
+        }
+        List<CompletableFuture<?>> dependencies = new ArrayList<>();
+        for (PluginDependency dependency : plugin.getDescriptor().getDependencies()) {
+            PluginWrapper dependent = plugins.get(dependency.getPluginId());
+            if (dependent != null) {
+                // 依赖的插件解析失败时仍然解析当前插件, 是否启动由 pf4j 决定
+                dependencies.add(schedule(dependent, plugins, scheduled, executor).exceptionally(e -> null));
+            }
+        }
+        future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(v -> {
+                    try {
+                        return prepareStart(plugin);
+                    } catch (IOException | PluginException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+        scheduled.put(plugin.getPluginId(), future);
+        return future;
     }
 
 
@@ -185,118 +526,378 @@ public class PluginApplication implements PluginStateListener {
         }
     }
 
-    public Optional<PluginBeanDefinition> lookupBeanDefinition(Object bean) {
-        return beanDefinitions.values().stream()
-                .flatMap(Collection::stream)
-                .filter(b -> b.cls().isAssignableFrom(bean.getClass()))
-                .findAny();
+    public Optional<PluginBeanDefinition> lookupBeanDefinition(String beanName, Object bean) {
+        return lookupBeanDefinition(beanName, bean.getClass());
     }
 
-    public Optional<File> getConfig(String configFileName) {
-        return Optional.ofNullable(configs.get(configFileName));
+    public Optional<PluginBeanDefinition> lookupBeanDefinition(Object bean) {
+        return lookupBeanDefinition(null, bean.getClass());
     }
 
-    private byte[] readEntry(JarFile jarFile, JarEntry entry) throws IOException {
-
-        try (InputStream input = jarFile.getInputStream(entry)) {
-            int bufferSize = 4096;
-            byte[] buffer = new byte[bufferSize];
-            int bytesNumRead = 0;
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                while ((bytesNumRead = input.read(buffer)) != -1) {
-                    baos.write(buffer, 0, bytesNumRead);
-                }
-                byte[] entryBytes = baos.toByteArray();
-                baos.flush();
-                return entryBytes;
-            }
+    /**
+     * bean还没有创建时按bean名称和类型查找
+     */
+    public Optional<PluginBeanDefinition> lookupBeanDefinition(String beanName, Class<?> beanClass) {
+        if (beanClassDefinitions.isEmpty()) {
+            return Optional.empty();
+        }
+        PluginBeanDefinition definition = beanName == null ? null : beanNameDefinitions.get(beanName);
+        if (definition != null) {
+            return Optional.of(definition);
         }
+        definition = beanClassDefinitions.get(beanClass);
+        if (definition == null && beanClass.getName().contains(ClassUtils.CGLIB_CLASS_SEPARATOR)) {
+            definition = beanClassDefinitions.get(beanClass.getSuperclass());
+        }
+        return Optional.ofNullable(definition);
+    }
+
+    public Optional<File> getConfig(String configFileName) {
+        return Optional.ofNullable(configs.get(configFileName));
     }
 
     protected void onStop(PluginStateEvent event) {
+        long begin = System.nanoTime();
+        closeResources(event.getPlugin().getPluginId());
         try {
             List<PluginBeanDefinition> pluginBeanDefinitions = beanDefinitions.remove(event.getPlugin().getPluginId());
             if (CollectionUtils.isEmpty(pluginBeanDefinitions)) {
+                PluginInfo info = pluginInfo(event.getPlugin());
+                eventBus.publish(StateEvent.stop(info, Collections.emptyList()));
+                metrics.stopped(info, System.nanoTime() - begin, 0);
                 return;
             }
-            pluginBeanDefinitions.stream().filter(ControllerBeanDefinition.class::isInstance)
-                    .forEach(p -> controllerProcessor.unregisterController((ControllerBeanDefinition) p));
+            if (!properties.isGracefulStop()) {
+                // 优雅停止时已经在 quiesce 中注销
+                controllerProcessor.unregisterControllers(controllers(pluginBeanDefinitions));
+            }
             Set<String> beanNames = pluginBeanDefinitions.stream().map(p -> p.beanName(beanFactory)).collect(Collectors.toSet());
+            beanNames.forEach(beanNameDefinitions::remove);
+            pluginBeanDefinitions.forEach(p -> beanClassDefinitions.remove(p.cls(), p));
 
+            // 只取已经创建的单例, 不为了销毁去创建懒加载的bean
             Collection<Object> beans = beanNames.stream()
-                    .map(beanFactory::getBean)
+                    .map(beanFactory::getSingleton)
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toSet());
-            beanNames.forEach(name -> {
-                logger.info("destroy: {}", name);
-                try {
-                    beanFactory.removeBeanDefinition(name);
-                    beanFactory.destroySingleton(name);
-                } catch (BeanCreationException e) {
-                    logger.error("error destroy bean: {}", name, e);
+            if (properties.isGracefulStop()) {
+                destroyInParallel(beanNames);
+            } else {
+                synchronized (beanFactory) {
+                    beanNames.forEach(name -> {
+                        logger.info("destroy: {}", name);
+                        try {
+                            beanFactory.removeBeanDefinition(name);
+                            beanFactory.destroySingleton(name);
+                        } catch (BeansException e) {
+                            logger.error("error destroy bean: {}", name, e);
+                        }
+                    });
                 }
-            });
-            stateChangeListeners
-                    .forEach(l -> l.change(StateEvent.stop(new PluginInfo(event.getPlugin()), beans)));
+            }
+            PluginInfo info = pluginInfo(event.getPlugin());
+            eventBus.publish(StateEvent.stop(info, beans));
+            metrics.stopped(info, System.nanoTime() - begin, beans.size());
         } catch (Exception e) {
             logger.error("error in stop plugin: {}", event.getPlugin().getPluginId(), e);
         }
     }
 
+    private static List<ControllerBeanDefinition> controllers(List<PluginBeanDefinition> definitions) {
+        return definitions.stream()
+                .filter(ControllerBeanDefinition.class::isInstance)
+                .map(ControllerBeanDefinition.class::cast)
+                .collect(Collectors.toList());
+    }
+
+    private void quiesceIfStarted(PluginWrapper plugin) {
+        if (properties.isGracefulStop() && plugin != null && plugin.getPluginState() == PluginState.STARTED) {
+            quiesce(plugin.getPluginId());
+        }
+    }
+
+    /**
+     * 插件停止前注销插件的路由, 等待已经进入插件的请求处理完
+     */
+    private void quiesce(String pluginId) {
+        List<PluginBeanDefinition> pluginBeanDefinitions = beanDefinitions.get(pluginId);
+        if (CollectionUtils.isEmpty(pluginBeanDefinitions)) {
+            return;
+        }
+        controllerProcessor.unregisterControllers(controllers(pluginBeanDefinitions));
+        drain(pluginId);
+    }
+
+    private void drain(String pluginId) {
+        try {
+            int remaining = requestTracker.awaitDrained(pluginId, properties.getStopDrainTimeoutMillis());
+            if (remaining > 0) {
+                logger.warn("{} still has {} requests in flight after {}ms", pluginId, remaining, properties.getStopDrainTimeoutMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 按依赖关系把插件的bean分成互不相关的组, 各组在 stopPool 中并行销毁, 组内由 destroySingleton 先销毁依赖方
+     * 每个bean先删除定义再销毁单例(removeBeanDefinition), 销毁后不会再被 getBean 重新创建;
+     * 运行期删除定义时 DefaultListableBeanFactory 会同步更新bean名称列表, 可以在多个线程中执行
+     */
+    private void destroyInParallel(Set<String> beanNames) {
+        Map<String, String> groups = new HashMap<>();
+        beanNames.forEach(name -> groups.put(name, name));
+        for (String name : beanNames) {
+            for (String dependent : beanFactory.getDependentBeans(name)) {
+                if (beanNames.contains(dependent)) {
+                    union(groups, name, dependent);
+                }
+            }
+        }
+        Map<String, List<String>> components = new HashMap<>();
+        beanNames.forEach(name -> components.computeIfAbsent(find(groups, name), k -> new ArrayList<>()).add(name));
+        CompletableFuture<?>[] futures = components.values().stream()
+                .map(component -> CompletableFuture.runAsync(() -> component.forEach(this::removeBean), stopPool))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private void removeBean(String name) {
+        logger.info("destroy: {}", name);
+        try {
+            beanFactory.removeBeanDefinition(name);
+        } catch (RuntimeException e) {
+            logger.error("error destroy bean: {}", name, e);
+        }
+    }
+
+    private static String find(Map<String, String> groups, String name) {
+        String root = name;
+        while (!root.equals(groups.get(root))) {
+            root = groups.get(root);
+        }
+        groups.put(name, root);
+        return root;
+    }
+
+    private static void union(Map<String, String> groups, String a, String b) {
+        groups.put(find(groups, a), find(groups, b));
+    }
+
+    protected void onUnload(PluginStateEvent event) {
+        closeResources(event.getPlugin().getPluginId());
+        controllerProcessor.evictMappingInfos(event.getPlugin().getPluginId());
+    }
+
     private final EntryWrapper.ClassEntryWrapper classWrapper = new EntryWrapper.ClassEntryWrapper();
 
     protected void onStart(PluginStateEvent event) {
+        Map<String, CompletableFuture<PreparedStart>> prepared = preparedStarts;
+        resolvePlugin(event.getPlugin(), prepared == null ? null : prepared.get(event.getPlugin().getPluginId()));
+    }
+
+    /**
+     * @param prepared 并行启动时提前执行的扫描和类加载, 为 null 时在当前线程执行
+     */
+    private void resolvePlugin(PluginWrapper plugin, CompletableFuture<PreparedStart> prepared) {
+        PluginResourceAccounting.Sample sample = resourceAccounting.begin(plugin.getPluginId(), PluginResourceAccounting.Source.START);
         try {
-            entries(event.getPlugin(), classWrapper).forEach(je -> resolveBean(event.getPlugin(), je));
-            resolveExtensions(event.getPlugin());
-            stateChangeListeners.forEach(l -> l.change(StateEvent.start(new PluginInfo(event.getPlugin()))));
+            PreparedStart start = prepared != null ? prepared.join() : prepareStart(plugin);
+            PluginInfo info = pluginInfo(plugin);
+            long begin = System.nanoTime();
+            long mark = begin;
+            controllerProcessor.beginRegistration(plugin.getPluginId());
+            registerBeans(plugin, start.classes);
+            mark = phase(info, PluginMetrics.StartPhase.BEAN_REGISTRATION, mark);
+            resolveExtensions(plugin);
+            mark = phase(info, PluginMetrics.StartPhase.EXTENSIONS, mark);
+            if (beanFactory.isConfigurationFrozen()) {
+                registerControllers(plugin.getPluginId());
+                mark = phase(info, PluginMetrics.StartPhase.ROUTE_REGISTRATION, mark);
+            }
+            eventBus.publish(StateEvent.start(info));
+            mark = phase(info, PluginMetrics.StartPhase.DISPATCH, mark);
+            metrics.started(info, start.nanos + mark - begin);
         } catch (Exception e) {
+            controllerProcessor.cancelRegistration(plugin.getPluginId());
             logger.error("", e);
+        } finally {
+            resourceAccounting.end(sample);
         }
     }
 
-
-    private Collection<JarEntry> entries(PluginWrapper plugin, EntryWrapper<?> filter) throws IOException, PluginException {
-        Set<JarEntry> entries = new HashSet<>();
-        Path pluginPath = plugin.getPluginPath();
-        try (JarFile jar = new JarFile(pluginPath.toFile())) {
-            Enumeration<JarEntry> en = jar.entries();
-            while (en.hasMoreElements()) {
-                JarEntry je = en.nextElement();
-                if (filter.filter(new PluginInfo(plugin), je)) {
-                    entries.add(je);
+    /**
+     * 创建插件的controller, 创建完成后一次注册插件的全部路由, 任何一个创建失败时不注册
+     */
+    private void registerControllers(String pluginId) {
+        boolean created = false;
+        try {
+            for (PluginBeanDefinition definition : beanDefinitions.getOrDefault(pluginId, Collections.emptyList())) {
+                if (definition instanceof ControllerBeanDefinition) {
+                    beanFactory.getBean(definition.beanName(beanFactory));
                 }
             }
+            created = true;
+        } finally {
+            if (created) {
+                controllerProcessor.endRegistration(pluginId);
+            } else {
+                controllerProcessor.cancelRegistration(pluginId);
+            }
+        }
+    }
+
+    /**
+     * 随容器初始化启动的插件, controller 由容器创建, 全部单例创建完成后按插件注册路由
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String pluginId : new ArrayList<>(beanDefinitions.keySet())) {
+            try {
+                controllerProcessor.endRegistration(pluginId);
+            } catch (RuntimeException e) {
+                logger.error("error in register controllers: {}", pluginId, e);
+            }
+        }
+    }
+
+    /**
+     * 扫描插件并加载候选类, 不修改bean工厂, 可以在插件启动前执行
+     */
+    private PreparedStart prepareStart(PluginWrapper plugin) throws IOException, PluginException {
+        PluginResourceAccounting.Sample sample = resourceAccounting.begin(plugin.getPluginId(), PluginResourceAccounting.Source.START);
+        try {
+            PluginInfo info = pluginInfo(plugin);
+            long begin = System.nanoTime();
+            Collection<String> candidates = candidates(plugin);
+            long mark = phase(info, PluginMetrics.StartPhase.SCAN, begin);
+            List<Class<?>> classes = new ArrayList<>();
+            for (String className : candidates) {
+                resolveBean(plugin, className).ifPresent(classes::add);
+            }
+            mark = phase(info, PluginMetrics.StartPhase.CLASS_LOAD, mark);
+            return new PreparedStart(classes, mark - begin);
+        } finally {
+            resourceAccounting.end(sample);
         }
-        return entries;
     }
 
+    private long phase(PluginInfo info, PluginMetrics.StartPhase phase, long begin) {
+        long now = System.nanoTime();
+        metrics.startPhase(info, phase, now - begin);
+        return now;
+    }
+
+    private void registerBeans(PluginWrapper plugin, Collection<Class<?>> classes) {
+        // DefaultListableBeanFactory 注册bean定义不是线程安全的
+        synchronized (beanFactory) {
+            classes.forEach(clz -> registerBean(plugin, clz));
+        }
+    }
 
     private void registerBean(PluginWrapper plugin, Class<?> clz) {
         PluginBeanDefinition build = definitionFactory.build(plugin, clz);
         String beanName = build.beanName(beanFactory);
         beanFactory.registerBeanDefinition(beanName, build.rawBeanDefinition());
-        List<PluginBeanDefinition> list = beanDefinitions.getOrDefault(plugin.getPluginId(), new ArrayList<>());
-        list.add(build);
-        beanDefinitions.putIfAbsent(plugin.getPluginId(), list);
+        beanDefinitions.computeIfAbsent(plugin.getPluginId(), k -> new CopyOnWriteArrayList<>()).add(build);
+        beanNameDefinitions.put(beanName, build);
+        beanClassDefinitions.putIfAbsent(clz, build);
     }
 
     private void resolveExtensions(PluginWrapper plugin) {
-        List extensions = pluginManager.getExtensions(plugin.getPluginId());
+        List extensions;
+        synchronized (pluginManager) {
+            extensions = pluginManager.getExtensions(plugin.getPluginId());
+        }
+        List<Class<?>> classes = new ArrayList<>();
         for (Object extension : extensions) {
-            registerBean(plugin, extension.getClass());
+            classes.add(ClassUtils.getUserClass(extension));
+        }
+        registerBeans(plugin, classes);
+    }
+
+    /**
+     * 优先使用编译期生成的索引, 没有索引时扫描整个jar
+     */
+    private Collection<String> candidates(PluginWrapper plugin) throws IOException, PluginException {
+        Optional<List<String>> index = BeanIndex.read(plugin.getPluginPath());
+        if (index.isPresent()) {
+            logger.debug("{} resolve beans from {}", plugin.getPluginId(), BeanIndex.LOCATION);
+            return index.get();
         }
+        return scan(plugin);
     }
 
-    private void resolveBean(PluginWrapper plugin, JarEntry je) {
+    private static final Set<String> BEAN_ANNOTATIONS = Stream.of(Component.class, Repository.class, Service.class,
+                    RestController.class, Config.class)
+            .map(Class::getName)
+            .collect(Collectors.toSet());
+
+    /**
+     * 读取class文件头判断是否可能是bean, 只加载候选类
+     */
+    private Collection<String> scan(PluginWrapper plugin) throws IOException, PluginException {
+        Map<String, ClassMetadata> classes = new HashMap<>();
+        List<String> candidates = new ArrayList<>();
+        PluginInfo info = pluginInfo(plugin);
+        try (JarFile jar = new JarFile(plugin.getPluginPath().toFile())) {
+            Enumeration<JarEntry> en = jar.entries();
+            while (en.hasMoreElements()) {
+                JarEntry je = en.nextElement();
+                if (!classWrapper.filter(info, je)) {
+                    continue;
+                }
+                try (InputStream in = jar.getInputStream(je)) {
+                    ClassMetadata metadata = ClassMetadata.read(in);
+                    classes.put(metadata.getClassName(), metadata);
+                } catch (IOException | RuntimeException e) {
+                    // 解析不了的类交给类加载后判断
+                    logger.debug("error in read class file: {}", je.getName(), e);
+                    candidates.add(je.getName().replace(ClassEntry.CLASS, "").replace("/", "."));
+                }
+            }
+        }
+        for (ClassMetadata metadata : classes.values()) {
+            if (candidate(metadata, classes)) {
+                candidates.add(metadata.getClassName());
+            }
+        }
+        return candidates;
+    }
+
+    private boolean candidate(ClassMetadata metadata, Map<String, ClassMetadata> classes) {
+        if (metadata.isInterface() || metadata.isAbstract()) {
+            return false;
+        }
+        if (metadata.hasAnyAnnotation(BEAN_ANNOTATIONS)) {
+            return true;
+        }
+        // @Config 可以从父类继承
+        String superClassName = metadata.getSuperClassName();
+        while (superClassName != null) {
+            ClassMetadata parent = classes.get(superClassName);
+            if (parent == null) {
+                // 父类不在插件jar中, 无法判断
+                return !superClassName.startsWith("java.");
+            }
+            if (parent.hasAnnotation(Config.class.getName())) {
+                return true;
+            }
+            superClassName = parent.getSuperClassName();
+        }
+        return false;
+    }
+
+    private Optional<Class<?>> resolveBean(PluginWrapper plugin, String className) {
         try {
-            String className = je.getName().replace(".class", "").replace("/", ".");
             Class<?> aClass = plugin.getPluginClassLoader().loadClass(className);
             if (support(aClass)) {
-                registerBean(plugin, aClass);
+                return Optional.of(aClass);
             }
         } catch (ClassNotFoundException e) {
             logger.error("error in resolveBeans", e);
         }
+        return Optional.empty();
     }
 
     private boolean support(Class<?> aClass) {
@@ -317,6 +918,12 @@ public class PluginApplication implements PluginStateListener {
     public void pluginStateChanged(PluginStateEvent event) {
 
         logger.info("{} {}", event.getPlugin().getPluginId(), event.getPluginState().name());
+        pluginVersion.incrementAndGet();
+        if (event.getPluginState() == PluginState.UNLOADED) {
+            pluginInfos.remove(event.getPlugin().getPluginId());
+        } else {
+            pluginInfos.put(event.getPlugin().getPluginId(), new PluginInfo(event.getPlugin()));
+        }
         switch (event.getPluginState()) {
             case STARTED:
                 onStart(event);
@@ -324,8 +931,31 @@ public class PluginApplication implements PluginStateListener {
             case STOPPED:
                 onStop(event);
                 break;
+            case UNLOADED:
+                onUnload(event);
+                break;
             default:
                 //don't care
         }
     }
+
+    private static class PreparedStart {
+        private final List<Class<?>> classes;
+        private final long nanos;
+
+        private PreparedStart(List<Class<?>> classes, long nanos) {
+            this.classes = classes;
+            this.nanos = nanos;
+        }
+    }
+
+    private static class Descriptors {
+        private final long version;
+        private final List<PluginInfo> infos;
+
+        private Descriptors(long version, List<PluginInfo> infos) {
+            this.version = version;
+            this.infos = infos;
+        }
+    }
 }
@@ -2,47 +2,152 @@ package org.wep.plugins;
 
 import org.wep.utils.ReflectionUtils;
 import org.springframework.beans.BeansException;
-import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Optional;
 
 /**
  * controller bean和Config bean注册后处理
  * controller bean: refresh url
  * config bean: load config file
+ * 开启资源统计时, 插件bean从实例化到初始化完成的消耗计入插件启动
  */
-public class PluginBeanProcessor implements BeanPostProcessor {
+public class PluginBeanProcessor implements InstantiationAwareBeanPostProcessor, BeanFactoryAware {
     private final PluginApplication pluginApplication;
     private final Collection<BeanProcessor> processors;
+    /**
+     * 当前线程正在创建的插件bean, 按创建的嵌套顺序
+     */
+    private final ThreadLocal<Deque<Creation>> creations = new ThreadLocal<>();
+    private ConfigurableBeanFactory beanFactory;
+    /**
+     * bean定义类型 -> processor, 每种定义类型只解析一次
+     */
+    private final ClassValue<Optional<BeanProcessor>> processorRegistry = new ClassValue<Optional<BeanProcessor>>() {
+        @Override
+        protected Optional<BeanProcessor> computeValue(Class<?> definitionType) {
+            return processors.stream()
+                    .filter(p -> supports(p, definitionType))
+                    .findAny();
+        }
+    };
 
     public PluginBeanProcessor(PluginApplication pluginApplication, Collection<BeanProcessor> processors) {
         this.pluginApplication = pluginApplication;
         this.processors = processors;
     }
 
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        if (beanFactory instanceof ConfigurableBeanFactory) {
+            this.beanFactory = (ConfigurableBeanFactory) beanFactory;
+        }
+    }
+
+    private static boolean supports(BeanProcessor<?> processor, Class<?> definitionType) {
+        Class<?> supported = processor.supportedDefinitionType();
+        if (supported != null) {
+            return supported.isAssignableFrom(definitionType);
+        }
+        return ReflectionUtils.isImplementationGeneric(definitionType, processor.getClass());
+    }
+
     protected Optional<BeanProcessor> findBeanProcessor(PluginBeanDefinition definition) {
-        return processors.stream()
-                .filter(l -> ReflectionUtils.isImplementationGeneric(definition.getClass(), l.getClass()))
-                .findAny();
+        return processorRegistry.get(definition.getClass());
     }
 
-    protected Object resolveBean(Object bean) {
-        return pluginApplication.lookupBeanDefinition(bean)
+    /**
+     * @param initialized 是否已经完成初始化
+     */
+    protected Object resolveBean(Object bean, String beanName, boolean initialized) {
+        return pluginApplication.lookupBeanDefinition(beanName, bean)
                 .map(definition ->
                         findBeanProcessor(definition)
+                                .filter(processor -> initialized || !processor.afterInitializationOnly())
                                 .map(processor -> processor.resolveBean(definition, bean))
                                 .orElse(bean)
                 ).orElse(bean);
     }
 
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+        PluginResourceAccounting accounting = pluginApplication.getResourceAccounting();
+        if (!accounting.isEnabled()) {
+            return null;
+        }
+        pluginApplication.lookupBeanDefinition(beanName, beanClass).ifPresent(definition -> {
+            Deque<Creation> stack = creations.get();
+            if (stack == null) {
+                stack = new ArrayDeque<>();
+                creations.set(stack);
+            }
+            endFailed(accounting, stack);
+            stack.push(new Creation(beanName, accounting.begin(definition.pluginId(), PluginResourceAccounting.Source.START)));
+        });
+        return null;
+    }
+
     @Override
     public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
-        return resolveBean(bean);
+        return resolveBean(bean, beanName, false);
     }
 
+    /**
+     * 开启扩展统计时, 扩展bean以扩展类的子类代理暴露
+     */
     @Override
     public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
-        return resolveBean(bean);
+        PluginResourceAccounting accounting = pluginApplication.getResourceAccounting();
+        if (!accounting.isEnabled()) {
+            return resolveBean(bean, beanName, true);
+        }
+        try {
+            Object resolved = resolveBean(bean, beanName, true);
+            return pluginApplication.lookupBeanDefinition(beanName, bean)
+                    .filter(ExtensionBeanDefinition.class::isInstance)
+                    .map(definition -> accounting.proxyExtension(definition.pluginId(), resolved))
+                    .orElse(resolved);
+        } finally {
+            endCreation(accounting, beanName);
+        }
+    }
+
+    private void endCreation(PluginResourceAccounting accounting, String beanName) {
+        Deque<Creation> stack = creations.get();
+        if (stack == null) {
+            return;
+        }
+        endFailed(accounting, stack);
+        if (!stack.isEmpty() && stack.peek().beanName.equals(beanName)) {
+            accounting.end(stack.pop().sample);
+        }
+        if (stack.isEmpty()) {
+            creations.remove();
+        }
+    }
+
+    /**
+     * 创建失败的bean不会走到初始化后处理, 在同一线程下次创建插件bean时结束它的统计
+     */
+    private void endFailed(PluginResourceAccounting accounting, Deque<Creation> stack) {
+        while (!stack.isEmpty() && beanFactory != null && !beanFactory.isCurrentlyInCreation(stack.peek().beanName)) {
+            accounting.end(stack.pop().sample);
+        }
+    }
+
+    private static class Creation {
+        final String beanName;
+        final PluginResourceAccounting.Sample sample;
+
+        Creation(String beanName, PluginResourceAccounting.Sample sample) {
+            this.beanName = beanName;
+            this.sample = sample;
+        }
     }
 }
@@ -0,0 +1,156 @@
+package org.wep.plugins;
+
+import org.pf4j.PluginWrapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 按插件遍历jar中的条目, 遍历到某个插件时才打开它的jar, 遍历完立即关闭
+ * 按插件拆分, 同一个插件的条目共用一个 PluginInfo
+ * 提前结束时由 Stream.close() 关闭仍打开的jar
+ */
+public class PluginEntrySpliterator implements Spliterator<PluginEntry<?>> {
+    private final List<PluginWrapper> plugins;
+    private final EntryWrapper<?> wrapper;
+    private final Function<PluginWrapper, PluginInfo> infos;
+    /**
+     * 所有拆分出的 spliterator 共享, 记录仍打开的jar
+     */
+    private final Set<JarFile> opened;
+    private int index;
+    private int fence;
+    private JarFile jar;
+    private Enumeration<JarEntry> entries;
+    private PluginInfo info;
+
+    PluginEntrySpliterator(List<PluginWrapper> plugins, EntryWrapper<?> wrapper, Function<PluginWrapper, PluginInfo> infos) {
+        this(plugins, wrapper, infos, ConcurrentHashMap.newKeySet(), 0, plugins.size());
+    }
+
+    private PluginEntrySpliterator(List<PluginWrapper> plugins, EntryWrapper<?> wrapper, Function<PluginWrapper, PluginInfo> infos,
+                                   Set<JarFile> opened, int index, int fence) {
+        this.plugins = plugins;
+        this.wrapper = wrapper;
+        this.infos = infos;
+        this.opened = opened;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super PluginEntry<?>> action) {
+        try {
+            while (true) {
+                if (entries == null) {
+                    if (index >= fence) {
+                        return false;
+                    }
+                    open(plugins.get(index++));
+                    continue;
+                }
+                if (!entries.hasMoreElements()) {
+                    closeCurrent();
+                    continue;
+                }
+                JarEntry entry = entries.nextElement();
+                if (wrapper.filter(info, entry)) {
+                    action.accept(wrapper.wrap(info, entry));
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            closeCurrent();
+            throw new UncheckedIOException(e);
+        } catch (PluginException e) {
+            closeCurrent();
+            throw new EntryException(e);
+        }
+    }
+
+    private void open(PluginWrapper plugin) throws IOException {
+        info = infos.apply(plugin);
+        if (!plugin.getPluginPath().toFile().isFile()) {
+            return;
+        }
+        jar = new JarFile(plugin.getPluginPath().toFile());
+        opened.add(jar);
+        entries = jar.entries();
+    }
+
+    private void closeCurrent() {
+        entries = null;
+        info = null;
+        if (jar != null) {
+            opened.remove(jar);
+            close(jar);
+            jar = null;
+        }
+    }
+
+    /**
+     * 关闭所有拆分出的 spliterator 中仍打开的jar
+     */
+    void close() {
+        for (JarFile file : opened) {
+            opened.remove(file);
+            close(file);
+        }
+    }
+
+    private static void close(JarFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把还未打开的插件拆出一半, 当前正在遍历的插件留在本 spliterator 中
+     */
+    @Override
+    public Spliterator<PluginEntry<?>> trySplit() {
+        int remaining = fence - index;
+        if (remaining < (entries == null ? 2 : 1)) {
+            return null;
+        }
+        int mid = index + remaining / 2;
+        PluginEntrySpliterator suffix = new PluginEntrySpliterator(plugins, wrapper, infos, opened, mid, fence);
+        fence = mid;
+        return suffix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    /**
+     * EntryWrapper 抛出的 PluginException
+     */
+    public static class EntryException extends RuntimeException {
+        EntryException(PluginException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized PluginException getCause() {
+            return (PluginException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package org.wep.plugins;
+
+import org.springframework.context.EmbeddedValueResolverAware;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringValueResolver;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfoHandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 插件专用的 handler mapping, 排在宿主 RequestMappingHandlerMapping 之前
+ * 按路径前缀(插件id 或 @PathPrefix)找到对应的路由表, 只在该表中匹配, 找不到时交给宿主
+ * 路由表不可变, 注册/注销时整体替换, 请求线程只会看到替换前或替换后的路由表
+ * 拦截器、全局跨域配置和路径匹配方式与宿主的 RequestMappingHandlerMapping 保持一致, 见 configure 和 configureFrom
+ */
+public class PluginHandlerMapping extends RequestMappingInfoHandlerMapping implements EmbeddedValueResolverAware {
+    /**
+     * 路径前缀 -> 路由表
+     */
+    private final ConcurrentHashMap<String, List<Route>> tables = new ConcurrentHashMap<>();
+    /**
+     * 插件方法上 @CrossOrigin 的跨域配置
+     */
+    private final Map<Method, CorsConfiguration> corsConfigurations = new ConcurrentHashMap<>();
+    private volatile RequestMappingInfo.BuilderConfiguration builderConfiguration;
+    private StringValueResolver embeddedValueResolver;
+
+    public PluginHandlerMapping() {
+        setOrder(-1);
+        setPatternParser(new PathPatternParser());
+    }
+
+    /**
+     * 插件路由只通过 register 注册, 不从容器中探测
+     */
+    @Override
+    protected boolean isHandler(Class<?> beanType) {
+        return false;
+    }
+
+    @Override
+    public void setEmbeddedValueResolver(StringValueResolver resolver) {
+        this.embeddedValueResolver = resolver;
+    }
+
+    /**
+     * 与宿主一样应用 WebMvcConfigurer 中注册的拦截器和全局跨域配置, 需要在本 mapping 初始化之前调用
+     */
+    public void configure(List<WebMvcConfigurer> configurers) {
+        Interceptors interceptors = new Interceptors();
+        Cors cors = new Cors();
+        for (WebMvcConfigurer configurer : configurers) {
+            configurer.addInterceptors(interceptors);
+            configurer.addCorsMappings(cors);
+        }
+        setInterceptors(interceptors.getInterceptors().toArray());
+        setCorsConfigurations(cors.getCorsConfigurations());
+    }
+
+    /**
+     * 使用宿主的路径匹配方式(PathPatternParser 或 AntPathMatcher、UrlPathHelper、尾部斜杠匹配等)
+     */
+    public void configureFrom(RequestMappingHandlerMapping host) {
+        setPatternParser(host.getPatternParser());
+        setUrlPathHelper(host.getUrlPathHelper());
+        setPathMatcher(host.getPathMatcher());
+        this.builderConfiguration = host.getBuilderConfiguration();
+    }
+
+    /**
+     * 插件路由的 RequestMappingInfo 需要使用与本 mapping 一致的路径解析方式
+     */
+    public RequestMappingInfo.BuilderConfiguration getBuilderConfiguration() {
+        if (builderConfiguration != null) {
+            return builderConfiguration;
+        }
+        RequestMappingInfo.BuilderConfiguration configuration = new RequestMappingInfo.BuilderConfiguration();
+        configuration.setPatternParser(getPatternParser());
+        return configuration;
+    }
+
+    @Override
+    protected RequestMappingInfo getMappingForMethod(Method method, Class<?> handlerType) {
+        return null;
+    }
+
+    public synchronized void register(String prefix, Collection<Route> routes) {
+        String key = normalize(prefix);
+        Set<Method> methods = new HashSet<>();
+        routes.forEach(r -> methods.add(r.getHandlerMethod().getMethod()));
+        List<Route> table = new ArrayList<>();
+        for (Route route : tables.getOrDefault(key, Collections.emptyList())) {
+            if (!methods.contains(route.getHandlerMethod().getMethod())) {
+                table.add(route);
+            }
+        }
+        table.addAll(routes);
+        methods.forEach(corsConfigurations::remove);
+        for (Route route : routes) {
+            HandlerMethod handlerMethod = route.getHandlerMethod();
+            CorsConfiguration cors = initCorsConfiguration(handlerMethod.getBean(), handlerMethod.getMethod(), route.getInfo());
+            if (cors != null) {
+                corsConfigurations.put(handlerMethod.getMethod(), cors);
+            }
+        }
+        tables.put(key, Collections.unmodifiableList(table));
+    }
+
+    public synchronized void unregister(String prefix, Collection<Method> methods) {
+        String key = normalize(prefix);
+        List<Route> table = new ArrayList<>();
+        for (Route route : tables.getOrDefault(key, Collections.emptyList())) {
+            if (!methods.contains(route.getHandlerMethod().getMethod())) {
+                table.add(route);
+            }
+        }
+        methods.forEach(corsConfigurations::remove);
+        if (table.isEmpty()) {
+            tables.remove(key);
+        } else {
+            tables.put(key, Collections.unmodifiableList(table));
+        }
+    }
+
+    /**
+     * 与 RequestMappingHandlerMapping 相同, 合并类和方法上的 @CrossOrigin
+     */
+    @Override
+    protected CorsConfiguration initCorsConfiguration(Object handler, Method method, RequestMappingInfo mappingInfo) {
+        Class<?> beanType = new HandlerMethod(handler, method).getBeanType();
+        CrossOrigin typeAnnotation = AnnotatedElementUtils.findMergedAnnotation(beanType, CrossOrigin.class);
+        CrossOrigin methodAnnotation = AnnotatedElementUtils.findMergedAnnotation(method, CrossOrigin.class);
+        if (typeAnnotation == null && methodAnnotation == null) {
+            return null;
+        }
+        CorsConfiguration config = new CorsConfiguration();
+        updateCorsConfig(config, typeAnnotation);
+        updateCorsConfig(config, methodAnnotation);
+        if (CollectionUtils.isEmpty(config.getAllowedMethods())) {
+            for (RequestMethod allowedMethod : mappingInfo.getMethodsCondition().getMethods()) {
+                config.addAllowedMethod(allowedMethod.name());
+            }
+        }
+        return config.applyPermitDefaultValues();
+    }
+
+    private void updateCorsConfig(CorsConfiguration config, CrossOrigin annotation) {
+        if (annotation == null) {
+            return;
+        }
+        for (String origin : annotation.origins()) {
+            config.addAllowedOrigin(resolve(origin));
+        }
+        for (String pattern : annotation.originPatterns()) {
+            config.addAllowedOriginPattern(resolve(pattern));
+        }
+        for (RequestMethod method : annotation.methods()) {
+            config.addAllowedMethod(method.name());
+        }
+        for (String header : annotation.allowedHeaders()) {
+            config.addAllowedHeader(resolve(header));
+        }
+        for (String header : annotation.exposedHeaders()) {
+            config.addExposedHeader(resolve(header));
+        }
+        String allowCredentials = resolve(annotation.allowCredentials());
+        if ("true".equalsIgnoreCase(allowCredentials)) {
+            config.setAllowCredentials(true);
+        } else if ("false".equalsIgnoreCase(allowCredentials)) {
+            config.setAllowCredentials(false);
+        } else if (!allowCredentials.isEmpty()) {
+            throw new IllegalStateException("@CrossOrigin's allowCredentials value must be \"true\", \"false\", "
+                    + "or an empty string (\"\"): current value is [" + allowCredentials + "]");
+        }
+        if (annotation.maxAge() >= 0) {
+            config.setMaxAge(annotation.maxAge());
+        }
+    }
+
+    private String resolve(String value) {
+        return embeddedValueResolver == null ? value : embeddedValueResolver.resolveStringValue(value);
+    }
+
+    @Override
+    protected boolean hasCorsConfigurationSource(Object handler) {
+        return super.hasCorsConfigurationSource(handler) || (handler instanceof HandlerMethod
+                && corsConfigurations.containsKey(((HandlerMethod) handler).getMethod()));
+    }
+
+    @Override
+    protected CorsConfiguration getCorsConfiguration(Object handler, HttpServletRequest request) {
+        CorsConfiguration config = super.getCorsConfiguration(handler, request);
+        if (handler instanceof HandlerMethod) {
+            CorsConfiguration methodConfig = corsConfigurations.get(((HandlerMethod) handler).getMethod());
+            config = config != null ? config.combine(methodConfig) : methodConfig;
+        }
+        return config;
+    }
+
+    public Map<String, List<Route>> getRouteTables() {
+        return Collections.unmodifiableMap(tables);
+    }
+
+    @Override
+    protected HandlerMethod lookupHandlerMethod(String lookupPath, HttpServletRequest request) throws Exception {
+        if (tables.isEmpty()) {
+            return null;
+        }
+        List<List<Route>> candidates = candidateTables(lookupPath);
+        for (List<Route> table : candidates) {
+            HandlerMethod handlerMethod = lookupHandlerMethod(table, lookupPath, request);
+            if (handlerMethod != null) {
+                return handlerMethod;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Set<RequestMappingInfo> infos = new HashSet<>();
+        candidates.forEach(table -> table.forEach(r -> infos.add(r.getInfo())));
+        // 路径匹配但是请求方法、content type等不匹配时抛出对应的异常
+        return handleNoMatch(infos, lookupPath, request);
+    }
+
+    private HandlerMethod lookupHandlerMethod(List<Route> table, String lookupPath, HttpServletRequest request) {
+        RequestMappingInfo bestInfo = null;
+        Route best = null;
+        RequestMappingInfo secondInfo = null;
+        Comparator<RequestMappingInfo> comparator = getMappingComparator(request);
+        for (Route route : table) {
+            RequestMappingInfo info = getMatchingMapping(route.getInfo(), request);
+            if (info == null) {
+                continue;
+            }
+            if (bestInfo == null || comparator.compare(info, bestInfo) < 0) {
+                secondInfo = bestInfo;
+                bestInfo = info;
+                best = route;
+            } else if (secondInfo == null || comparator.compare(info, secondInfo) < 0) {
+                secondInfo = info;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        if (secondInfo != null && comparator.compare(bestInfo, secondInfo) == 0) {
+            throw new IllegalStateException(String.format("Ambiguous plugin handler methods mapped for '%s': {%s, %s}",
+                    lookupPath, bestInfo, secondInfo));
+        }
+        request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, best.getHandlerMethod());
+        handleMatch(bestInfo, lookupPath, request);
+        return best.getHandlerMethod();
+    }
+
+    /**
+     * 依次用 lookupPath 的每一级目录作为前缀查找路由表, 最后是空前缀
+     */
+    private List<List<Route>> candidateTables(String lookupPath) {
+        List<List<Route>> candidates = new ArrayList<>(2);
+        String path = normalize(lookupPath);
+        int index = path.indexOf('/');
+        while (index != -1) {
+            addIfPresent(candidates, path.substring(0, index));
+            index = path.indexOf('/', index + 1);
+        }
+        if (!path.isEmpty()) {
+            addIfPresent(candidates, path);
+        }
+        addIfPresent(candidates, "");
+        return candidates;
+    }
+
+    private void addIfPresent(List<List<Route>> candidates, String prefix) {
+        List<Route> table = tables.get(prefix);
+        if (table != null) {
+            candidates.add(table);
+        }
+    }
+
+    private static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.length() > start && path.endsWith("/") ? path.length() - 1 : path.length();
+        return path.substring(start, end);
+    }
+
+    public static class Route {
+        private final RequestMappingInfo info;
+        private final HandlerMethod handlerMethod;
+
+        public Route(RequestMappingInfo info, Object handler, Method method) {
+            this.info = info;
+            this.handlerMethod = new HandlerMethod(handler, method);
+        }
+
+        public RequestMappingInfo getInfo() {
+            return info;
+        }
+
+        public HandlerMethod getHandlerMethod() {
+            return handlerMethod;
+        }
+    }
+
+    /**
+     * 只为了读取 WebMvcConfigurer 注册的拦截器
+     */
+    private static class Interceptors extends InterceptorRegistry {
+        @Override
+        protected List<Object> getInterceptors() {
+            return super.getInterceptors();
+        }
+    }
+
+    private static class Cors extends CorsRegistry {
+        @Override
+        protected Map<String, CorsConfiguration> getCorsConfigurations() {
+            return super.getCorsConfigurations();
+        }
+    }
+}
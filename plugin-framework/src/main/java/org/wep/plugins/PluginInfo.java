@@ -1,30 +1,38 @@
 package org.wep.plugins;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.pf4j.PluginState;
 import org.pf4j.PluginWrapper;
 
 import java.nio.file.Path;
 
-public class PluginInfo {
+/**
+ * 插件某个状态下的不可变快照, 由 PluginApplication 在插件状态变化时重建
+ * 插件不在 CREATED/RESOLVED/STARTED 状态时不持有类加载器, 避免快照引用已卸载的类加载器
+ */
+public final class PluginInfo {
     @JsonIgnore
-    private Path path;
-    private String pluginId;
-    private String pluginDescription;
-    private String version;
-    private String provider;
-    private String license;
-    private ClassLoader classLoader;
-    private String state;
+    private final Path path;
+    private final String pluginId;
+    private final String pluginDescription;
+    private final String version;
+    private final String provider;
+    private final String license;
+    private final ClassLoader classLoader;
+    private final String state;
 
     public PluginInfo(PluginWrapper pluginWrapper) {
+        PluginState pluginState = pluginWrapper.getPluginState();
         this.path = pluginWrapper.getPluginPath();
         this.pluginId = pluginWrapper.getPluginId();
         this.pluginDescription = pluginWrapper.getDescriptor().getPluginDescription();
         this.version = pluginWrapper.getDescriptor().getVersion();
         this.provider = pluginWrapper.getDescriptor().getProvider();
         this.license = pluginWrapper.getDescriptor().getLicense();
-        this.classLoader = pluginWrapper.getPluginClassLoader();
-        this.state = pluginWrapper.getPluginState().name();
+        this.classLoader = pluginState == PluginState.CREATED || pluginState == PluginState.RESOLVED || pluginState == PluginState.STARTED
+                ? pluginWrapper.getPluginClassLoader()
+                : null;
+        this.state = pluginState.name();
     }
 
     public String getPluginId() {
@@ -61,6 +69,9 @@ public class PluginInfo {
 
     @JsonIgnore
     public Class<?> loadClass(String className) throws ClassNotFoundException {
+        if (classLoader == null) {
+            throw new ClassNotFoundException(String.format("%s is %s: %s", pluginId, state, className));
+        }
         return classLoader.loadClass(className);
     }
 }
@@ -0,0 +1,64 @@
+package org.wep.plugins;
+
+/**
+ * 插件生命周期的耗时记录, 默认不记录
+ * 由 PluginApplication 在插件启动、停止和 ConfigProcessor 绑定配置时调用, 实现需要线程安全(插件可以并行启动)
+ */
+public interface PluginMetrics {
+    PluginMetrics NONE = new PluginMetrics() {
+    };
+
+    /**
+     * 插件启动的各个阶段
+     */
+    enum StartPhase {
+        /**
+         * 读取bean索引或扫描jar得到候选类
+         */
+        SCAN,
+        /**
+         * 加载候选类
+         */
+        CLASS_LOAD,
+        /**
+         * 注册bean定义
+         */
+        BEAN_REGISTRATION,
+        /**
+         * 解析pf4j扩展并注册bean定义
+         */
+        EXTENSIONS,
+        /**
+         * 创建插件的controller并一次注册路由
+         */
+        ROUTE_REGISTRATION,
+        /**
+         * 发布启动事件
+         */
+        DISPATCH
+    }
+
+    /**
+     * 设置到 PluginApplication 时调用, 用于注册读取插件状态、路由数的指标
+     */
+    default void bindTo(PluginApplication application) {
+    }
+
+    default void startPhase(PluginInfo info, StartPhase phase, long nanos) {
+    }
+
+    /**
+     * @param nanos 所有阶段的总耗时
+     */
+    default void started(PluginInfo info, long nanos) {
+    }
+
+    /**
+     * @param destroyedBeans 销毁的已创建的bean数量
+     */
+    default void stopped(PluginInfo info, long nanos, int destroyedBeans) {
+    }
+
+    default void configBound(PluginInfo info, String configFileName, long nanos) {
+    }
+}
@@ -21,6 +21,65 @@ public class PluginProperties {
      * 是否开启插件id作为二级path
      */
     private boolean enablePluginIdRestPathPrefix = true;
+    /**
+     * 是否并行扫描插件和加载插件类, 插件仍按依赖顺序串行启动, 启动顺序与串行启动一致
+     */
+    private boolean parallelStartup = false;
+    /**
+     * 并行启动的线程数, 缺省为cpu核数
+     */
+    private int startupParallelism = 0;
+    /**
+     * 是否使用插件专用的 handler mapping, 插件路由不再注册到宿主的 RequestMappingHandlerMapping
+     * 专用 mapping 使用宿主的路径匹配方式, 应用 WebMvcConfigurer 中的拦截器、全局跨域配置和插件方法上的 @CrossOrigin;
+     * 只注册在宿主 RequestMappingHandlerMapping 上的拦截器(不是通过 WebMvcConfigurer 或 MappedInterceptor)不会生效
+     */
+    private boolean dedicatedHandlerMapping = false;
+    /**
+     * 是否监听插件配置目录, 配置文件变化后重新绑定 @Config bean
+     */
+    private boolean configHotReload = false;
+    /**
+     * 配置文件变化后等待多久没有新的变化再重新加载, 单位毫秒, 必须大于0
+     */
+    private long configReloadDebounceMillis = 500;
+    /**
+     * 是否在插件路径前缀下提供插件jar中 static/ 目录的静态资源
+     */
+    private boolean staticResources = false;
+    /**
+     * 插件状态监听器是否异步接收事件, 异步时每个监听器按发布顺序接收
+     */
+    private boolean asyncStateEvents = false;
+    /**
+     * 异步监听器的事件队列长度, 队列满时发布方等待
+     */
+    private int stateEventQueueCapacity = 1024;
+    /**
+     * 停止插件时先注销路由, 等待插件中的请求处理完, 再按依赖关系并行销毁bean
+     */
+    private boolean gracefulStop = false;
+    /**
+     * 停止插件时等待请求处理完的最长时间, 单位毫秒
+     */
+    private long stopDrainTimeoutMillis = 30000;
+    /**
+     * 存在 MeterRegistry 时是否记录插件路由的请求指标
+     */
+    private boolean httpMetrics = true;
+    /**
+     * 是否按插件统计线程cpu时间和分配的内存(controller调用、扩展调用和插件启动)
+     */
+    private boolean resourceAccounting = false;
+    /**
+     * 开启 resourceAccounting 时是否统计扩展调用, 扩展bean和 pf4j getExtensions 返回的扩展以cglib子类代理,
+     * 类型不变; final 类不代理, final 方法不统计
+     */
+    private boolean extensionAccounting = false;
+    /**
+     * 每多少次调用采样一次, 采样值按间隔放大, 1 表示每次都统计
+     */
+    private int resourceSamplingInterval = 1;
 
     public void setPluginPath(String pluginPath) {
         this.pluginPath = pluginPath;
@@ -38,6 +97,49 @@ public class PluginProperties {
         this.enablePluginIdRestPathPrefix = enablePluginIdRestPathPrefix;
     }
 
+    public void setParallelStartup(boolean parallelStartup) {
+        this.parallelStartup = parallelStartup;
+    }
+
+    public void setStartupParallelism(int startupParallelism) {
+        this.startupParallelism = startupParallelism;
+    }
+
+    public void setDedicatedHandlerMapping(boolean dedicatedHandlerMapping) {
+        this.dedicatedHandlerMapping = dedicatedHandlerMapping;
+    }
+
+    public void setConfigHotReload(boolean configHotReload) {
+        this.configHotReload = configHotReload;
+    }
+
+    public void setConfigReloadDebounceMillis(long configReloadDebounceMillis) {
+        if (configReloadDebounceMillis <= 0) {
+            throw new IllegalArgumentException("configReloadDebounceMillis must be greater than 0: " + configReloadDebounceMillis);
+        }
+        this.configReloadDebounceMillis = configReloadDebounceMillis;
+    }
+
+    public void setStaticResources(boolean staticResources) {
+        this.staticResources = staticResources;
+    }
+
+    public void setAsyncStateEvents(boolean asyncStateEvents) {
+        this.asyncStateEvents = asyncStateEvents;
+    }
+
+    public void setStateEventQueueCapacity(int stateEventQueueCapacity) {
+        this.stateEventQueueCapacity = stateEventQueueCapacity;
+    }
+
+    public void setGracefulStop(boolean gracefulStop) {
+        this.gracefulStop = gracefulStop;
+    }
+
+    public void setStopDrainTimeoutMillis(long stopDrainTimeoutMillis) {
+        this.stopDrainTimeoutMillis = stopDrainTimeoutMillis;
+    }
+
     public String getPluginPath() {
         return pluginPath;
     }
@@ -57,4 +159,76 @@ public class PluginProperties {
         return enablePluginIdRestPathPrefix;
     }
 
+    public boolean isParallelStartup() {
+        return parallelStartup;
+    }
+
+    public int getStartupParallelism() {
+        return startupParallelism;
+    }
+
+    public boolean isDedicatedHandlerMapping() {
+        return dedicatedHandlerMapping;
+    }
+
+    public boolean isConfigHotReload() {
+        return configHotReload;
+    }
+
+    public long getConfigReloadDebounceMillis() {
+        return configReloadDebounceMillis;
+    }
+
+    public boolean isStaticResources() {
+        return staticResources;
+    }
+
+    public boolean isAsyncStateEvents() {
+        return asyncStateEvents;
+    }
+
+    public int getStateEventQueueCapacity() {
+        return stateEventQueueCapacity;
+    }
+
+    public boolean isGracefulStop() {
+        return gracefulStop;
+    }
+
+    public long getStopDrainTimeoutMillis() {
+        return stopDrainTimeoutMillis;
+    }
+
+    public void setHttpMetrics(boolean httpMetrics) {
+        this.httpMetrics = httpMetrics;
+    }
+
+    public boolean isHttpMetrics() {
+        return httpMetrics;
+    }
+
+    public void setResourceAccounting(boolean resourceAccounting) {
+        this.resourceAccounting = resourceAccounting;
+    }
+
+    public boolean isResourceAccounting() {
+        return resourceAccounting;
+    }
+
+    public void setExtensionAccounting(boolean extensionAccounting) {
+        this.extensionAccounting = extensionAccounting;
+    }
+
+    public boolean isExtensionAccounting() {
+        return extensionAccounting;
+    }
+
+    public void setResourceSamplingInterval(int resourceSamplingInterval) {
+        this.resourceSamplingInterval = resourceSamplingInterval;
+    }
+
+    public int getResourceSamplingInterval() {
+        return resourceSamplingInterval;
+    }
+
 }
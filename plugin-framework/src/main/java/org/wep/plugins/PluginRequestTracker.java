@@ -0,0 +1,113 @@
+package org.wep.plugins;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统计每个插件正在处理的请求数, 插件停止时注销路由后等待这些请求处理完再销毁bean
+ * 以 MappedInterceptor 注册后对所有 handler mapping 生效; 异步请求从开始到异步分派完成都算在处理中
+ */
+public class PluginRequestTracker implements AsyncHandlerInterceptor {
+    private static final String ATTRIBUTE = PluginRequestTracker.class.getName() + ".inFlight";
+    private final PluginApplication pluginApplication;
+    /**
+     * 插件id -> 正在处理的请求数
+     */
+    private final ConcurrentHashMap<String, InFlight> inFlights = new ConcurrentHashMap<>();
+
+    public PluginRequestTracker(PluginApplication pluginApplication) {
+        this.pluginApplication = pluginApplication;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(ATTRIBUTE) instanceof InFlight) {
+            // 异步请求再次分派, 开始时已计数
+            return true;
+        }
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        Object bean = ((HandlerMethod) handler).getBean();
+        if (bean instanceof String) {
+            return true;
+        }
+        Optional<PluginBeanDefinition> definition = pluginApplication.lookupBeanDefinition(bean);
+        if (definition.isPresent()) {
+            InFlight inFlight = inFlights.computeIfAbsent(definition.get().pluginId(), k -> new InFlight());
+            inFlight.increment();
+            request.setAttribute(ATTRIBUTE, inFlight);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // 请求线程先释放, 异步分派完成时才减少计数
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object inFlight = request.getAttribute(ATTRIBUTE);
+        if (inFlight instanceof InFlight) {
+            request.removeAttribute(ATTRIBUTE);
+            ((InFlight) inFlight).decrement();
+        }
+    }
+
+    public int getInFlight(String pluginId) {
+        InFlight inFlight = inFlights.get(pluginId);
+        return inFlight == null ? 0 : inFlight.count();
+    }
+
+    /**
+     * 等待插件正在处理的请求完成
+     *
+     * @return 超时后仍未完成的请求数
+     */
+    public int awaitDrained(String pluginId, long timeoutMillis) throws InterruptedException {
+        InFlight inFlight = inFlights.get(pluginId);
+        if (inFlight == null) {
+            return 0;
+        }
+        int remaining = inFlight.await(timeoutMillis);
+        if (remaining == 0) {
+            inFlights.remove(pluginId, inFlight);
+        }
+        return remaining;
+    }
+
+    private static class InFlight {
+        private int count;
+
+        synchronized void increment() {
+            count++;
+        }
+
+        synchronized void decrement() {
+            if (--count <= 0) {
+                count = 0;
+                notifyAll();
+            }
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized int await(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long wait = timeoutMillis;
+            while (count > 0 && wait > 0) {
+                wait(wait);
+                wait = deadline - System.currentTimeMillis();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.wep.plugins;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Modifier;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 按插件累计线程cpu时间和分配的内存, 在调用插件代码的线程上取 ThreadMXBean 的前后差值
+ * 嵌套调用(如插件controller调用另一个插件的扩展)时内层的消耗只计入内层插件, 不重复计入外层
+ * 按插件id累计, 插件重启后继续累加; 设置采样间隔时只统计部分最外层的请求和扩展调用, 采样值按间隔放大, 插件启动每次都统计
+ * 插件bean在启动后按需创建, 在请求或扩展调用中创建时也计入插件启动
+ */
+public class PluginResourceAccounting {
+    private static final Logger logger = LoggerFactory.getLogger(PluginResourceAccounting.class);
+
+    /**
+     * 统计来源
+     */
+    public enum Source {
+        /**
+         * 插件启动: 扫描、类加载、注册bean定义、创建扩展, 以及插件bean的实例化和初始化
+         */
+        START,
+        /**
+         * 插件controller处理请求
+         */
+        REQUEST,
+        /**
+         * 调用插件的扩展
+         */
+        EXTENSION
+    }
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTime;
+    /**
+     * 读取当前线程已分配字节数, 不支持时为 null
+     */
+    private final MethodHandle allocatedBytes;
+    private final int interval;
+    private final boolean enabled;
+    private final boolean extensions;
+    /**
+     * 插件id -> 累计值
+     */
+    private final ConcurrentHashMap<String, Usage> usages = new ConcurrentHashMap<>();
+    /**
+     * 当前线程正在统计的最内层调用
+     */
+    private final ThreadLocal<Sample> current = new ThreadLocal<>();
+
+    public PluginResourceAccounting(PluginProperties properties) {
+        this.interval = Math.max(1, properties.getResourceSamplingInterval());
+        if (!properties.isResourceAccounting()) {
+            this.cpuTime = false;
+            this.allocatedBytes = null;
+            this.enabled = false;
+            this.extensions = false;
+            return;
+        }
+        this.cpuTime = enableCpuTime();
+        this.allocatedBytes = allocatedBytesHandle();
+        this.enabled = cpuTime || allocatedBytes != null;
+        this.extensions = enabled && properties.isExtensionAccounting();
+        if (!enabled) {
+            logger.warn("thread cpu time and allocated bytes are not supported, plugin resource accounting disabled");
+        }
+    }
+
+    private boolean enableCpuTime() {
+        try {
+            if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!threadMXBean.isThreadCpuTimeEnabled()) {
+                threadMXBean.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            logger.warn("thread cpu time not available", e);
+            return false;
+        }
+    }
+
+    /**
+     * jdk 14 以后有 getCurrentThreadAllocatedBytes, 之前的版本按线程id查找线程, 开销较大
+     */
+    private MethodHandle allocatedBytesHandle() {
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        try {
+            if (!bean.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            logger.warn("thread allocated bytes not available", e);
+            return null;
+        }
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            return lookup.findVirtual(com.sun.management.ThreadMXBean.class, "getCurrentThreadAllocatedBytes",
+                    MethodType.methodType(long.class)).bindTo(bean);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            try {
+                MethodHandle byId = lookup.findVirtual(com.sun.management.ThreadMXBean.class, "getThreadAllocatedBytes",
+                        MethodType.methodType(long.class, long.class)).bindTo(bean);
+                MethodHandle currentId = lookup.findStatic(PluginResourceAccounting.class, "currentThreadId",
+                        MethodType.methodType(long.class));
+                return MethodHandles.foldArguments(byId, currentId);
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                return null;
+            }
+        }
+    }
+
+    private static long currentThreadId() {
+        return Thread.currentThread().getId();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开始统计当前线程调用插件代码, 必须在同一个线程上调用 end
+     *
+     * @return 未开启或本次不采样时返回 null
+     */
+    public Sample begin(String pluginId, Source source) {
+        if (!enabled) {
+            return null;
+        }
+        Sample parent = current.get();
+        int scale = source == Source.START ? 1 : parent != null ? parent.scale : interval;
+        if (scale > 1 && parent == null && ThreadLocalRandom.current().nextInt(scale) != 0) {
+            return null;
+        }
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+        if (parent != null) {
+            // 外层到这里为止的消耗先计入外层
+            record(parent, cpu, allocated, 0);
+        }
+        Sample sample = new Sample(pluginId, source, parent, scale, cpu, allocated);
+        current.set(sample);
+        return sample;
+    }
+
+    /**
+     * 结束统计, 差值计入插件, 外层调用从这里继续统计
+     *
+     * @param sample begin 的返回值, 为 null 时忽略
+     */
+    public void end(Sample sample) {
+        if (sample == null) {
+            return;
+        }
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+        record(sample, cpu, allocated, 1);
+        Sample parent = sample.parent;
+        if (parent == null) {
+            current.remove();
+        } else {
+            parent.cpuTime = cpu;
+            parent.allocatedBytes = allocated;
+            current.set(parent);
+        }
+    }
+
+    private void record(Sample sample, long cpu, long allocated, int calls) {
+        usages.computeIfAbsent(sample.pluginId, k -> new Usage()).add(sample.source,
+                (cpu - sample.cpuTime) * sample.scale, (allocated - sample.allocatedBytes) * sample.scale, (long) calls * sample.scale);
+    }
+
+    private long cpuTime() {
+        return cpuTime ? threadMXBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long allocatedBytes() {
+        if (allocatedBytes == null) {
+            return 0;
+        }
+        try {
+            return (long) allocatedBytes.invokeExact();
+        } catch (Throwable e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 开启扩展统计时用cglib生成扩展类的子类代理扩展, 调用扩展方法时计入插件, 仍然可以按扩展类获取和转换
+     *
+     * @return 未开启扩展统计、final 类或已经是代理时返回原来的扩展
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T proxyExtension(String pluginId, T extension) {
+        Class<?> type = extension.getClass();
+        if (!extensions || Modifier.isFinal(type.getModifiers()) || AopUtils.isAopProxy(extension)) {
+            return extension;
+        }
+        ProxyFactory factory = new ProxyFactory(extension);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            if (invocation.getMethod().getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+            Sample sample = begin(pluginId, Source.EXTENSION);
+            try {
+                return invocation.proceed();
+            } finally {
+                end(sample);
+            }
+        });
+        return (T) factory.getProxy(type.getClassLoader());
+    }
+
+    public long getCpuNanos(String pluginId, Source source) {
+        Usage usage = usages.get(pluginId);
+        return usage == null ? 0 : usage.counters.get(source).cpuNanos.sum();
+    }
+
+    public long getAllocatedBytes(String pluginId, Source source) {
+        Usage usage = usages.get(pluginId);
+        return usage == null ? 0 : usage.counters.get(source).allocatedBytes.sum();
+    }
+
+    public Optional<PluginResourceUsage> getUsage(String pluginId) {
+        return Optional.ofNullable(usages.get(pluginId)).map(usage -> usage.snapshot(pluginId));
+    }
+
+    /**
+     * @return cpu时间最多的 n 个插件
+     */
+    public List<PluginResourceUsage> top(int n) {
+        return top(n, Comparator.comparingLong(PluginResourceUsage::getCpuNanos));
+    }
+
+    /**
+     * @param comparator 按从小到大排序, 取最大的 n 个
+     */
+    public List<PluginResourceUsage> top(int n, Comparator<PluginResourceUsage> comparator) {
+        return usages.entrySet().stream()
+                .map(e -> e.getValue().snapshot(e.getKey()))
+                .sorted(comparator.reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    public static final class Sample {
+        private final String pluginId;
+        private final Source source;
+        private final Sample parent;
+        /**
+         * 采样间隔, 嵌套调用沿用外层的, 插件启动不采样
+         */
+        private final int scale;
+        private long cpuTime;
+        private long allocatedBytes;
+
+        private Sample(String pluginId, Source source, Sample parent, int scale, long cpuTime, long allocatedBytes) {
+            this.pluginId = pluginId;
+            this.source = source;
+            this.parent = parent;
+            this.scale = scale;
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static class Counters {
+        final LongAdder cpuNanos = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+        final LongAdder calls = new LongAdder();
+    }
+
+    private static class Usage {
+        final Map<Source, Counters> counters = new EnumMap<>(Source.class);
+
+        Usage() {
+            for (Source source : Source.values()) {
+                counters.put(source, new Counters());
+            }
+        }
+
+        void add(Source source, long cpuNanos, long allocatedBytes, long calls) {
+            Counters c = counters.get(source);
+            c.cpuNanos.add(cpuNanos);
+            c.allocatedBytes.add(allocatedBytes);
+            c.calls.add(calls);
+        }
+
+        PluginResourceUsage snapshot(String pluginId) {
+            Map<Source, PluginResourceUsage.Totals> totals = new EnumMap<>(Source.class);
+            counters.forEach((source, c) -> totals.put(source,
+                    new PluginResourceUsage.Totals(c.cpuNanos.sum(), c.allocatedBytes.sum(), c.calls.sum())));
+            return new PluginResourceUsage(pluginId, totals);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.wep.plugins;
+
+import org.wep.plugins.state.PluginStateChangeListener;
+import org.wep.plugins.state.StateEvent;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.servlet.handler.AbstractHandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 在插件路径前缀下提供插件jar中 static/ 目录的资源: {prefix}/static/**
+ * 使用jar中记录的CRC作为ETag, 修改时间作为Last-Modified, 支持条件请求、单个Range,
+ * 以及预压缩的 .br/.gz 资源
+ */
+public class PluginResourceHandlerMapping extends AbstractHandlerMapping implements PluginStateChangeListener {
+    public static final String STATIC = "static/";
+    private static final String BYTES = "bytes=";
+    private static final int BUFFER_SIZE = 8192;
+    private final PluginApplication pluginApplication;
+    /**
+     * 路径前缀 -> 插件id, 不使用插件id作为前缀时多个插件共用空前缀
+     */
+    private final Map<String, CopyOnWriteArrayList<String>> prefixes = new ConcurrentHashMap<>();
+
+    public PluginResourceHandlerMapping(PluginApplication pluginApplication) {
+        this.pluginApplication = pluginApplication;
+        // 排在 RequestMappingHandlerMapping 之后, 宿主的 /** 静态资源之前
+        setOrder(1);
+        pluginApplication.getPluginDescriptors().stream()
+                .filter(p -> "STARTED".equals(p.getState()))
+                .forEach(p -> register(p.getPluginId()));
+        // 路由需要在插件启动/停止时同步更新
+        pluginApplication.addListener(this, false);
+    }
+
+    @Override
+    public void change(StateEvent event) {
+        if (event.getState() == State.START) {
+            register(event.getPlugin().getPluginId());
+        } else if (event.getState() == State.STOP) {
+            unregister(event.getPlugin().getPluginId());
+        }
+    }
+
+    private void register(String pluginId) {
+        String prefix = normalize(pluginApplication.getControllerProcessor().refreshMappingPath(pluginId));
+        prefixes.computeIfAbsent(prefix, k -> new CopyOnWriteArrayList<>()).addIfAbsent(pluginId);
+    }
+
+    private void unregister(String pluginId) {
+        prefixes.values().forEach(ids -> ids.remove(pluginId));
+        prefixes.values().removeIf(List::isEmpty);
+    }
+
+    @Override
+    protected Object getHandlerInternal(HttpServletRequest request) throws Exception {
+        if (prefixes.isEmpty()) {
+            return null;
+        }
+        String path = normalize(initLookupPath(request));
+        int index = path.indexOf(STATIC);
+        while (index != -1) {
+            if (index == 0 || path.charAt(index - 1) == '/') {
+                String prefix = index == 0 ? "" : path.substring(0, index - 1);
+                List<String> pluginIds = prefixes.get(prefix);
+                if (pluginIds != null) {
+                    String name = path.substring(index);
+                    for (String pluginId : pluginIds) {
+                        Optional<PluginResources> resources = pluginApplication.getPluginResources(pluginId);
+                        if (resources.isPresent() && resources.get().contains(name)) {
+                            return new ResourceHandler(resources.get(), name);
+                        }
+                    }
+                }
+            }
+            index = path.indexOf(STATIC, index + 1);
+        }
+        return null;
+    }
+
+    private static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.length() > start && path.endsWith("/") ? path.length() - 1 : path.length();
+        return path.substring(start, end);
+    }
+
+    private class ResourceHandler implements HttpRequestHandler {
+        private final PluginResources resources;
+        private final String name;
+
+        private ResourceHandler(PluginResources resources, String name) {
+            this.resources = resources;
+            this.name = name;
+        }
+
+        /**
+         * 插件停止时会关闭jar, 读取期间持有资源, 关闭推迟到响应写完之后
+         */
+        @Override
+        public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if (!resources.retain()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            try {
+                serve(request, response);
+            } finally {
+                resources.release();
+            }
+        }
+
+        private void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            String method = request.getMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+                response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                return;
+            }
+            String encoding = null;
+            String entryName = name;
+            boolean compressed = false;
+            for (String candidate : new String[]{"br", "gzip"}) {
+                String sibling = name + ("br".equals(candidate) ? ".br" : ".gz");
+                if (resources.contains(sibling)) {
+                    compressed = true;
+                    if (encoding == null && accepts(request, candidate)) {
+                        encoding = candidate;
+                        entryName = sibling;
+                    }
+                }
+            }
+            Optional<PluginResources.ResourceEntry> found = resources.getResourceEntry(entryName);
+            if (!found.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            PluginResources.ResourceEntry entry = found.get();
+            String etag = etag(entry);
+            String contentType = getServletContext() == null ? null : getServletContext().getMimeType(name);
+            response.setContentType(contentType == null ? "application/octet-stream" : contentType);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            if (entry.getLastModified() > 0) {
+                response.setDateHeader(HttpHeaders.LAST_MODIFIED, entry.getLastModified());
+            }
+            if (compressed) {
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (encoding != null) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            }
+            if (notModified(request, entry, etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            long size = entry.getSize();
+            long[] range = null;
+            if (size >= 0) {
+                response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+                String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+                if (rangeHeader != null && ifRange(request, entry, etag)) {
+                    range = range(rangeHeader, size);
+                    if (range != null && range.length == 0) {
+                        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                        response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        return;
+                    }
+                }
+            }
+            long start = 0;
+            long length = size;
+            if (range != null) {
+                start = range[0];
+                length = range[1] - range[0] + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + size);
+            }
+            if (length >= 0) {
+                response.setContentLengthLong(length);
+            }
+            if ("HEAD".equals(method)) {
+                return;
+            }
+            Optional<InputStream> input = resources.getInputStream(entryName);
+            if (!input.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            try (InputStream in = input.get()) {
+                copy(in, response.getOutputStream(), start, length);
+            }
+        }
+    }
+
+    /**
+     * jar中的资源使用CRC和大小作为强ETag, 目录中的文件使用修改时间和大小作为弱ETag
+     */
+    private static String etag(PluginResources.ResourceEntry entry) {
+        if (entry.getCrc() >= 0) {
+            return "\"" + Long.toHexString(entry.getCrc()) + "-" + Long.toHexString(entry.getSize()) + "\"";
+        }
+        return "W/\"" + Long.toHexString(entry.getLastModified()) + "-" + Long.toHexString(entry.getSize()) + "\"";
+    }
+
+    private static boolean accepts(HttpServletRequest request, String encoding) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String value : headers.nextElement().split(",")) {
+                String[] parts = value.trim().split(";");
+                if (!parts[0].trim().equalsIgnoreCase(encoding)) {
+                    continue;
+                }
+                try {
+                    for (int i = 1; i < parts.length; i++) {
+                        String param = parts[i].trim();
+                        if (param.startsWith("q=") && Double.parseDouble(param.substring(2).trim()) == 0) {
+                            return false;
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    // q值格式错误时当作不接受
+                    return false;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 有 If-None-Match 时只比较ETag(弱比较), 否则比较 If-Modified-Since
+     */
+    static boolean notModified(HttpServletRequest request, PluginResources.ResourceEntry entry, String etag) {
+        Enumeration<String> ifNoneMatch = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.hasMoreElements()) {
+            while (ifNoneMatch.hasMoreElements()) {
+                for (String tag : ifNoneMatch.nextElement().split(",")) {
+                    tag = tag.trim();
+                    if ("*".equals(tag) || weak(tag).equals(weak(etag))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && entry.getLastModified() > 0
+                && entry.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range 的ETag需要强匹配, 日期需要与修改时间一致, 不匹配时返回完整内容
+     */
+    static boolean ifRange(HttpServletRequest request, PluginResources.ResourceEntry entry, String etag) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && entry.getLastModified() / 1000 == date / 1000;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static String weak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * 只支持单个范围, 多个范围时返回完整内容
+     *
+     * @return [start, end], 无法满足时为空数组, 不处理时为null
+     */
+    static long[] range(String header, long size) {
+        if (!header.startsWith(BYTES) || header.indexOf(',') != -1) {
+            return null;
+        }
+        String spec = header.substring(BYTES.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1).trim());
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash).trim());
+                String last = spec.substring(dash + 1).trim();
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (end < start) {
+                    return last.isEmpty() || start >= size ? new long[0] : null;
+                }
+            }
+            if (start >= size) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long start, long length) throws IOException {
+        long skipped = 0;
+        while (skipped < start) {
+            long n = in.skip(start - skipped);
+            if (n <= 0) {
+                if (in.read() == -1) {
+                    return;
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = length < 0 ? Long.MAX_VALUE : length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n == -1) {
+                break;
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+}
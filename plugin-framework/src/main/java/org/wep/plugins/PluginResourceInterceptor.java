@@ -0,0 +1,56 @@
+package org.wep.plugins;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 把插件controller处理请求的cpu时间和分配的内存计入插件
+ * 以 MappedInterceptor 注册后对所有 handler mapping 生效; 异步请求只统计请求线程上的部分, 异步分派时重新统计
+ */
+public class PluginResourceInterceptor implements AsyncHandlerInterceptor {
+    private static final String ATTRIBUTE = PluginResourceInterceptor.class.getName() + ".sample";
+    private final ControllerProcessor controllerProcessor;
+    private final PluginResourceAccounting accounting;
+
+    public PluginResourceInterceptor(PluginApplication pluginApplication) {
+        this.controllerProcessor = pluginApplication.getControllerProcessor();
+        this.accounting = pluginApplication.getResourceAccounting();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        String pluginId = controllerProcessor.getPluginId(((HandlerMethod) handler).getMethod());
+        if (pluginId == null) {
+            return true;
+        }
+        PluginResourceAccounting.Sample sample = accounting.begin(pluginId, PluginResourceAccounting.Source.REQUEST);
+        if (sample != null) {
+            request.setAttribute(ATTRIBUTE, sample);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        end(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        end(request);
+    }
+
+    private void end(HttpServletRequest request) {
+        Object sample = request.getAttribute(ATTRIBUTE);
+        if (sample instanceof PluginResourceAccounting.Sample) {
+            request.removeAttribute(ATTRIBUTE);
+            accounting.end((PluginResourceAccounting.Sample) sample);
+        }
+    }
+}
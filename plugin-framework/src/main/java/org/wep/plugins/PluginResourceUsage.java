@@ -0,0 +1,78 @@
+package org.wep.plugins;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 插件累计的cpu时间和分配的内存, 不可变的快照
+ */
+public final class PluginResourceUsage {
+    private final String pluginId;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+    private final Map<PluginResourceAccounting.Source, Totals> sources;
+
+    public PluginResourceUsage(String pluginId, Map<PluginResourceAccounting.Source, Totals> sources) {
+        this.pluginId = pluginId;
+        this.sources = Collections.unmodifiableMap(sources);
+        long cpu = 0;
+        long allocated = 0;
+        for (Totals totals : sources.values()) {
+            cpu += totals.cpuNanos;
+            allocated += totals.allocatedBytes;
+        }
+        this.cpuNanos = cpu;
+        this.allocatedBytes = allocated;
+    }
+
+    public String getPluginId() {
+        return pluginId;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return 各统计来源的累计值
+     */
+    public Map<PluginResourceAccounting.Source, Totals> getSources() {
+        return sources;
+    }
+
+    @Override
+    public String toString() {
+        return pluginId + " cpu=" + cpuNanos / 1_000_000 + "ms allocated=" + allocatedBytes / 1024 + "KB";
+    }
+
+    public static final class Totals {
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final long calls;
+
+        public Totals(long cpuNanos, long allocatedBytes, long calls) {
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.calls = calls;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return 统计的调用次数, 采样时是按间隔放大后的估计值
+         */
+        public long getCalls() {
+            return calls;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.wep.plugins;
+
+import org.pf4j.DefaultPluginClasspath;
+import org.pf4j.DevelopmentPluginClasspath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 插件jar中的资源, 打开一次后一直持有 JarFile, 插件停止时关闭
+ * 打开时建立 名称 -> JarEntry 的索引, 之后按名称查找资源不再遍历jar
+ * 插件路径是目录时(开发模式)读取类输出目录(target/classes 等)或 src/main/resources 下的文件
+ * 正在读取时关闭会推迟到最后一个 retain 的使用方 release 之后
+ */
+public final class PluginResources implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private final Path pluginPath;
+    private final JarFile jar;
+    private final Map<String, JarEntry> index;
+    /**
+     * 目录模式下依次查找资源的目录
+     */
+    private final List<Path> roots;
+    private int users;
+    private boolean closed;
+
+    private PluginResources(Path pluginPath, JarFile jar, Map<String, JarEntry> index, List<Path> roots) {
+        this.pluginPath = pluginPath;
+        this.jar = jar;
+        this.index = index;
+        this.roots = roots;
+    }
+
+    public static PluginResources open(Path pluginPath) throws IOException {
+        if (Files.isDirectory(pluginPath)) {
+            Path root = pluginPath.toAbsolutePath().normalize();
+            return new PluginResources(root, null, Collections.emptyMap(), roots(root));
+        }
+        JarFile jar = new JarFile(pluginPath.toFile());
+        Map<String, JarEntry> index = new HashMap<>(jar.size() * 4 / 3 + 1);
+        Enumeration<JarEntry> en = jar.entries();
+        while (en.hasMoreElements()) {
+            JarEntry je = en.nextElement();
+            if (!je.isDirectory()) {
+                index.put(je.getName(), je);
+            }
+        }
+        return new PluginResources(pluginPath, jar, Collections.unmodifiableMap(index), Collections.emptyList());
+    }
+
+    /**
+     * 与 pf4j 开发模式的类路径一致: maven、gradle、idea 的类输出目录, 解压的插件目录中的 classes, 最后是 src/main/resources
+     */
+    private static List<Path> roots(Path pluginPath) {
+        Set<String> directories = new LinkedHashSet<>(new DevelopmentPluginClasspath().getClassesDirectories());
+        directories.add(DefaultPluginClasspath.CLASSES_DIR);
+        directories.add("src/main/resources");
+        List<Path> roots = new ArrayList<>();
+        for (String directory : directories) {
+            Path root = pluginPath.resolve(directory).normalize();
+            if (Files.isDirectory(root)) {
+                roots.add(root);
+            }
+        }
+        return roots;
+    }
+
+    public Path getPluginPath() {
+        return pluginPath;
+    }
+
+    /**
+     * @return 名称 -> JarEntry, 插件路径是目录时为空
+     */
+    public Map<String, JarEntry> getIndex() {
+        return index;
+    }
+
+    public Optional<JarEntry> getEntry(String name) {
+        return Optional.ofNullable(index.get(name));
+    }
+
+    /**
+     * @return 资源的大小、CRC和修改时间, 不读取内容
+     */
+    public Optional<ResourceEntry> getResourceEntry(String name) {
+        if (jar == null) {
+            Optional<Path> file = file(name);
+            if (!file.isPresent()) {
+                return Optional.empty();
+            }
+            File f = file.get().toFile();
+            return Optional.of(new ResourceEntry(name, f.length(), -1, f.lastModified()));
+        }
+        JarEntry entry = index.get(name);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResourceEntry(name, entry.getSize(), entry.getCrc(), entry.getTime()));
+    }
+
+    public boolean contains(String name) {
+        return jar == null ? file(name).isPresent() : index.containsKey(name);
+    }
+
+    /**
+     * @return 资源的输入流, 由调用方关闭
+     */
+    public Optional<InputStream> getInputStream(String name) throws IOException {
+        if (jar == null) {
+            Optional<Path> file = file(name);
+            return file.isPresent() ? Optional.of(Files.newInputStream(file.get())) : Optional.empty();
+        }
+        JarEntry entry = index.get(name);
+        return entry == null ? Optional.empty() : Optional.of(jar.getInputStream(entry));
+    }
+
+    /**
+     * 目录中的文件使用内存映射, jar中的资源按记录的大小一次读入
+     */
+    public Optional<ByteBuffer> getByteBuffer(String name) throws IOException {
+        if (jar == null) {
+            Optional<Path> file = file(name);
+            if (!file.isPresent()) {
+                return Optional.empty();
+            }
+            try (FileChannel channel = FileChannel.open(file.get(), StandardOpenOption.READ)) {
+                return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        JarEntry entry = index.get(name);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return Optional.of(ByteBuffer.wrap(read(entry)));
+    }
+
+    public Optional<byte[]> getBytes(String name) throws IOException {
+        if (jar == null) {
+            Optional<Path> file = file(name);
+            return file.isPresent() ? Optional.of(Files.readAllBytes(file.get())) : Optional.empty();
+        }
+        JarEntry entry = index.get(name);
+        return entry == null ? Optional.empty() : Optional.of(read(entry));
+    }
+
+    /**
+     * 把资源写入 out, 不关闭 out
+     *
+     * @return 写入的字节数, 资源不存在时为 -1
+     */
+    public long transferTo(String name, OutputStream out) throws IOException {
+        if (jar == null) {
+            Optional<Path> file = file(name);
+            return file.isPresent() ? Files.copy(file.get(), out) : -1;
+        }
+        JarEntry entry = index.get(name);
+        if (entry == null) {
+            return -1;
+        }
+        try (InputStream in = jar.getInputStream(entry)) {
+            return copy(in, out);
+        }
+    }
+
+    private byte[] read(JarEntry entry) throws IOException {
+        long size = entry.getSize();
+        try (InputStream in = jar.getInputStream(entry)) {
+            if (size < 0 || size > Integer.MAX_VALUE) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+                copy(in, out);
+                return out.toByteArray();
+            }
+            byte[] bytes = new byte[(int) size];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int n = in.read(bytes, offset, bytes.length - offset);
+                if (n == -1) {
+                    throw new IOException(String.format("unexpected end of entry %s in %s", entry.getName(), pluginPath));
+                }
+                offset += n;
+            }
+            return bytes;
+        }
+    }
+
+    static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long count = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * 目录模式下不允许通过 ../ 读取资源目录之外的文件
+     */
+    private Optional<Path> file(String name) {
+        for (Path root : roots) {
+            Path file = root.resolve(name).normalize();
+            if (file.startsWith(root) && Files.isRegularFile(file)) {
+                return Optional.of(file);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static final class ResourceEntry {
+        private final String name;
+        private final long size;
+        private final long crc;
+        private final long lastModified;
+
+        ResourceEntry(String name, long size, long crc, long lastModified) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+            this.lastModified = lastModified;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 未压缩的大小, 未知时为 -1
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return jar中记录的CRC32, 目录中的文件为 -1
+         */
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * 读取资源前调用, 读取完成后必须调用 release
+     *
+     * @return 已关闭时为false, 不能再读取
+     */
+    public synchronized boolean retain() {
+        if (closed) {
+            return false;
+        }
+        users++;
+        return true;
+    }
+
+    public void release() throws IOException {
+        synchronized (this) {
+            if (--users > 0 || !closed) {
+                return;
+            }
+        }
+        closeJar();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (users > 0) {
+                return;
+            }
+        }
+        closeJar();
+    }
+
+    private void closeJar() throws IOException {
+        if (jar != null) {
+            jar.close();
+        }
+    }
+}
@@ -8,6 +8,7 @@ public interface PluginStateChangeListener {
         START,
         STOP,
         INSTALL,
-        UNINSTALL
+        UNINSTALL,
+        CONFIG_CHANGE
     }
 }
@@ -41,6 +41,14 @@ public class StateEvent {
         return event;
     }
 
+    public static StateEvent configChange(PluginInfo plugin, Collection<Object> beans) {
+        StateEvent event = new StateEvent();
+        event.state = PluginStateChangeListener.State.CONFIG_CHANGE;
+        event.plugin = plugin;
+        event.beans = beans;
+        return event;
+    }
+
     public PluginStateChangeListener.State getState() {
         return state;
     }
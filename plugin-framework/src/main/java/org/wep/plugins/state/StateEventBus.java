@@ -0,0 +1,238 @@
+package org.wep.plugins.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件状态事件总线
+ * 同步监听器在发布事件的线程上依次调用; 异步监听器各有一个有界队列, 由共享线程池逐个投递,
+ * 同一个监听器收到的事件顺序与发布顺序一致(因此同一个插件的事件也是有序的), 队列满时发布方阻塞等待
+ * 监听器列表写时复制, 注册与发布可以并发
+ */
+public class StateEventBus implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StateEventBus.class);
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final boolean defaultAsync;
+    private final int queueCapacity;
+    private volatile ExecutorService executor;
+
+    public StateEventBus(boolean defaultAsync, int queueCapacity) {
+        this.defaultAsync = defaultAsync;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void register(PluginStateChangeListener listener) {
+        register(listener, defaultAsync);
+    }
+
+    public void register(PluginStateChangeListener listener, boolean async) {
+        subscriptions.add(new Subscription(listener, async ? new ArrayBlockingQueue<>(queueCapacity) : null));
+    }
+
+    public boolean unregister(PluginStateChangeListener listener) {
+        return subscriptions.removeIf(s -> s.listener == listener);
+    }
+
+    public void publish(StateEvent event) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.queue == null) {
+                subscription.deliver(new Pending(event));
+            } else {
+                subscription.enqueue(new Pending(event));
+            }
+        }
+    }
+
+    /**
+     * @return 每个监听器的队列深度与投递耗时
+     */
+    public List<ListenerMetrics> getMetrics() {
+        List<ListenerMetrics> metrics = new ArrayList<>(subscriptions.size());
+        for (Subscription subscription : subscriptions) {
+            metrics.add(subscription.metrics());
+        }
+        return metrics;
+    }
+
+    private ExecutorService executor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                current = executor;
+                if (current == null) {
+                    AtomicInteger count = new AtomicInteger();
+                    current = Executors.newCachedThreadPool(r -> {
+                        Thread thread = new Thread(r, "plugin-state-event-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 等待已入队的事件投递完成, 最多等待几秒
+     */
+    @Override
+    public void close() {
+        ExecutorService current = executor;
+        if (current == null) {
+            return;
+        }
+        current.shutdown();
+        try {
+            if (!current.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("state events still pending on close");
+                current.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.shutdownNow();
+        }
+    }
+
+    private static class Pending {
+        private final StateEvent event;
+        private final long publishedAt = System.nanoTime();
+
+        private Pending(StateEvent event) {
+            this.event = event;
+        }
+    }
+
+    private class Subscription implements Runnable {
+        private final PluginStateChangeListener listener;
+        private final BlockingQueue<Pending> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        private Subscription(PluginStateChangeListener listener, BlockingQueue<Pending> queue) {
+            this.listener = listener;
+            this.queue = queue;
+        }
+
+        private void enqueue(Pending pending) {
+            try {
+                queue.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("interrupted, drop state event {} for {}", pending.event.getState(), listener);
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor().execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    logger.warn("state event bus closed, drop events for {}", listener);
+                    queue.clear();
+                }
+            }
+        }
+
+        /**
+         * 同一时刻只有一个线程在投递, 保证顺序
+         */
+        @Override
+        public void run() {
+            Pending pending;
+            while ((pending = queue.poll()) != null) {
+                deliver(pending);
+            }
+            scheduled.set(false);
+            // 退出前入队的事件需要重新调度
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void deliver(Pending pending) {
+            try {
+                listener.change(pending.event);
+                delivered.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                logger.error("error in state listener {} on {}", listener, pending.event.getState(), e);
+            } finally {
+                long latency = System.nanoTime() - pending.publishedAt;
+                totalLatency.addAndGet(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+            }
+        }
+
+        private ListenerMetrics metrics() {
+            return new ListenerMetrics(listener.getClass().getName(), queue != null,
+                    queue == null ? 0 : queue.size(), delivered.get(), failed.get(), totalLatency.get(), maxLatency.get());
+        }
+    }
+
+    public static class ListenerMetrics {
+        private final String listener;
+        private final boolean async;
+        private final int queueDepth;
+        private final long delivered;
+        private final long failed;
+        private final long totalLatencyNanos;
+        private final long maxLatencyNanos;
+
+        private ListenerMetrics(String listener, boolean async, int queueDepth, long delivered, long failed,
+                                long totalLatencyNanos, long maxLatencyNanos) {
+            this.listener = listener;
+            this.async = async;
+            this.queueDepth = queueDepth;
+            this.delivered = delivered;
+            this.failed = failed;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+        }
+
+        public String getListener() {
+            return listener;
+        }
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return 从发布到监听器处理完成的总耗时
+         */
+        public long getTotalLatencyNanos() {
+            return totalLatencyNanos;
+        }
+
+        public long getMaxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+    }
+}
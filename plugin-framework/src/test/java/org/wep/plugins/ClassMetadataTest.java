@@ -0,0 +1,173 @@
+package org.wep.plugins;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassMetadataTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @interface Inner {
+        String value();
+
+        TimeUnit unit() default TimeUnit.SECONDS;
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @interface Outer {
+        Inner[] value();
+
+        Inner single();
+
+        Class<?> type() default Object.class;
+
+        long[] numbers() default {};
+    }
+
+    /**
+     * 常量池中有 long 和 double, 各占两个位置
+     */
+    @RestController
+    static class WideConstants {
+        static final long LONG = 0x1234_5678_9ABC_DEF0L;
+        static final double DOUBLE = 3.141592653589793;
+        static final long OTHER = -42L;
+        static final String NAME = "after wide constants";
+
+        long sum(long a, double b) {
+            return a + (long) b + LONG + (long) DOUBLE + OTHER;
+        }
+    }
+
+    /**
+     * 嵌套的注解、数组、枚举和类的元素值都要跳过, 才能读到后面的注解
+     */
+    @Outer(value = {@Inner("a"), @Inner(value = "b", unit = TimeUnit.DAYS)},
+            single = @Inner("c"), type = String.class, numbers = {1L, Long.MAX_VALUE})
+    @Service
+    static class NestedAnnotations {
+    }
+
+    abstract static class AbstractBean extends WideConstants {
+    }
+
+    interface Api {
+    }
+
+    @Test
+    void readsClassWithLongAndDoubleConstants() throws IOException {
+        ClassMetadata metadata = read(WideConstants.class);
+        assertEquals(WideConstants.class.getName(), metadata.getClassName());
+        assertEquals(Object.class.getName(), metadata.getSuperClassName());
+        assertTrue(metadata.hasAnnotation(RestController.class.getName()));
+        assertFalse(metadata.isInterface());
+        assertFalse(metadata.isAbstract());
+    }
+
+    @Test
+    void skipsNestedAnnotationElementValues() throws IOException {
+        ClassMetadata metadata = read(NestedAnnotations.class);
+        assertEquals(2, metadata.getAnnotations().size());
+        assertTrue(metadata.hasAnnotation(Outer.class.getName()));
+        assertTrue(metadata.hasAnyAnnotation(Arrays.asList(Component.class.getName(), Service.class.getName())));
+    }
+
+    @Test
+    void readsSuperClassAndAccessFlags() throws IOException {
+        ClassMetadata metadata = read(AbstractBean.class);
+        assertEquals(WideConstants.class.getName(), metadata.getSuperClassName());
+        assertTrue(metadata.isAbstract());
+        assertTrue(metadata.getAnnotations().isEmpty());
+
+        assertTrue(read(Api.class).isInterface());
+        assertTrue(read(Outer.class).isInterface());
+    }
+
+    @Test
+    void readsModuleInfo() throws IOException {
+        ClassMetadata metadata = ClassMetadata.read(new ByteArrayInputStream(moduleInfo()));
+        assertEquals("module-info", metadata.getClassName());
+        assertNull(metadata.getSuperClassName());
+        assertTrue(metadata.isInterface());
+        assertTrue(metadata.getAnnotations().isEmpty());
+    }
+
+    @Test
+    void rejectsNonClassFile() {
+        assertThrows(IOException.class, () -> ClassMetadata.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4})));
+    }
+
+    private static ClassMetadata read(Class<?> type) throws IOException {
+        String resource = type.getName().replace('.', '/') + ".class";
+        try (InputStream in = type.getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull(in, resource);
+            return ClassMetadata.read(in);
+        }
+    }
+
+    /**
+     * java 8 编译不了 module-info, 按 java 9 的格式手工生成, 常量池带 CONSTANT_Module 和 CONSTANT_Package
+     */
+    private static byte[] moduleInfo() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(53);
+        out.writeShort(8);
+        // #1 Utf8 module-info, #2 Class #1
+        out.writeByte(1);
+        out.writeUTF("module-info");
+        out.writeByte(7);
+        out.writeShort(1);
+        // #3 Utf8 demo, #4 Module #3
+        out.writeByte(1);
+        out.writeUTF("demo");
+        out.writeByte(19);
+        out.writeShort(3);
+        // #5 Utf8 demo/api, #6 Package #5
+        out.writeByte(1);
+        out.writeUTF("demo/api");
+        out.writeByte(20);
+        out.writeShort(5);
+        // #7 Utf8 Module
+        out.writeByte(1);
+        out.writeUTF("Module");
+        // ACC_MODULE, this_class, super_class
+        out.writeShort(0x8000);
+        out.writeShort(2);
+        out.writeShort(0);
+        // interfaces, fields, methods
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(1);
+        // Module 属性: module_name_index, flags, version, 其余计数为0
+        out.writeShort(7);
+        out.writeInt(16);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        for (int i = 0; i < 5; i++) {
+            out.writeShort(0);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,108 @@
+package org.wep.plugins;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginResourceHandlerMappingTest {
+    private static final long LAST_MODIFIED = 1_700_000_000_123L;
+    private static final String ETAG = "\"abc-3e8\"";
+    private static final String WEAK_ETAG = "W/\"abc-3e8\"";
+    private static final PluginResources.ResourceEntry ENTRY =
+            new PluginResources.ResourceEntry("static/app.js", 1000, 0xABC, LAST_MODIFIED);
+
+    @Test
+    void rangeWithStartAndEnd() {
+        assertArrayEquals(new long[]{0, 99}, PluginResourceHandlerMapping.range("bytes=0-99", 1000));
+        // 结束位置超出大小时截断
+        assertArrayEquals(new long[]{100, 999}, PluginResourceHandlerMapping.range("bytes=100-5000", 1000));
+    }
+
+    @Test
+    void suffixRange() {
+        assertArrayEquals(new long[]{900, 999}, PluginResourceHandlerMapping.range("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, PluginResourceHandlerMapping.range("bytes=-2000", 1000));
+        assertEquals(0, PluginResourceHandlerMapping.range("bytes=-0", 1000).length);
+    }
+
+    @Test
+    void openRange() {
+        assertArrayEquals(new long[]{500, 999}, PluginResourceHandlerMapping.range("bytes=500-", 1000));
+        assertArrayEquals(new long[]{999, 999}, PluginResourceHandlerMapping.range("bytes=999-", 1000));
+    }
+
+    @Test
+    void unsatisfiableRange() {
+        assertEquals(0, PluginResourceHandlerMapping.range("bytes=1000-", 1000).length);
+        assertEquals(0, PluginResourceHandlerMapping.range("bytes=1000-2000", 1000).length);
+        assertEquals(0, PluginResourceHandlerMapping.range("bytes=0-", 0).length);
+    }
+
+    /**
+     * 格式错误或多个范围时不处理, 返回完整内容
+     */
+    @Test
+    void ignoredRange() {
+        assertNull(PluginResourceHandlerMapping.range("bytes=5-2", 1000));
+        assertNull(PluginResourceHandlerMapping.range("bytes=0-1,5-6", 1000));
+        assertNull(PluginResourceHandlerMapping.range("items=0-1", 1000));
+        assertNull(PluginResourceHandlerMapping.range("bytes=a-b", 1000));
+        assertNull(PluginResourceHandlerMapping.range("bytes=5", 1000));
+    }
+
+    @Test
+    void notModifiedComparesEtagsWeakly() {
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, ETAG, ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, WEAK_ETAG, ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, ETAG, WEAK_ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, "\"other\", " + WEAK_ETAG, ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, "*", ETAG));
+        assertFalse(notModified(HttpHeaders.IF_NONE_MATCH, "\"other\"", ETAG));
+    }
+
+    @Test
+    void notModifiedIgnoresDateWhenEtagPresent() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+        assertFalse(PluginResourceHandlerMapping.notModified(request, ENTRY, ETAG));
+    }
+
+    @Test
+    void notModifiedSinceComparesSeconds() {
+        assertTrue(notModified(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED / 1000 * 1000, ETAG));
+        assertTrue(notModified(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED + 60_000, ETAG));
+        assertFalse(notModified(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED - 1000, ETAG));
+        assertFalse(PluginResourceHandlerMapping.notModified(new MockHttpServletRequest(), ENTRY, ETAG));
+    }
+
+    @Test
+    void ifRangeRequiresStrongEtag() {
+        assertTrue(PluginResourceHandlerMapping.ifRange(new MockHttpServletRequest(), ENTRY, ETAG));
+        assertTrue(ifRange(ETAG, ETAG));
+        assertFalse(ifRange(WEAK_ETAG, ETAG));
+        assertFalse(ifRange(WEAK_ETAG, WEAK_ETAG));
+        assertFalse(ifRange("\"other\"", ETAG));
+    }
+
+    @Test
+    void ifRangeDateMustMatchLastModified() {
+        assertTrue(ifRange(LAST_MODIFIED / 1000 * 1000, ETAG));
+        assertFalse(ifRange(LAST_MODIFIED + 60_000, ETAG));
+        assertFalse(ifRange(LAST_MODIFIED - 60_000, ETAG));
+    }
+
+    private static boolean notModified(String header, Object value, String etag) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(header, value);
+        return PluginResourceHandlerMapping.notModified(request, ENTRY, etag);
+    }
+
+    private static boolean ifRange(Object value, String etag) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_RANGE, value);
+        return PluginResourceHandlerMapping.ifRange(request, ENTRY, etag);
+    }
+}
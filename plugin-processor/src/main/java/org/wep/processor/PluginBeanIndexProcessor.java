@@ -0,0 +1,130 @@
+package org.wep.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 编译期生成插件bean索引, 插件启动时只加载索引中的类, 不再遍历整个jar
+ * 索引格式: 每行一个类的binary name
+ * 增量编译只处理部分类, 写索引前合并已有的索引, 去掉本次编译过的类和已删除的类后保留其余的
+ */
+@SupportedAnnotationTypes("*")
+public class PluginBeanIndexProcessor extends AbstractProcessor {
+    /**
+     * 与 org.wep.plugins.BeanIndex#LOCATION 保持一致
+     */
+    public static final String LOCATION = "META-INF/wep/plugin-beans.idx";
+
+    private static final List<String> BEAN_ANNOTATIONS = Arrays.asList(
+            "org.springframework.stereotype.Component",
+            "org.springframework.stereotype.Repository",
+            "org.springframework.stereotype.Service",
+            "org.springframework.web.bind.annotation.RestController",
+            "org.wep.plugins.Config");
+
+    private final Set<String> beans = new TreeSet<>();
+    /**
+     * 本次编译处理的类, 已有索引中的这些类以本次的结果为准
+     */
+    private final Set<String> processed = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            write();
+            return false;
+        }
+        for (Element element : roundEnv.getRootElements()) {
+            collectTypes(element);
+        }
+        for (String name : BEAN_ANNOTATIONS) {
+            TypeElement annotation = processingEnv.getElementUtils().getTypeElement(name);
+            if (annotation == null) {
+                continue;
+            }
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+                    beans.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+                }
+            }
+        }
+        return false;
+    }
+
+    private void collectTypes(Element element) {
+        if (element instanceof TypeElement) {
+            processed.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            for (Element enclosed : element.getEnclosedElements()) {
+                collectTypes(enclosed);
+            }
+        }
+    }
+
+    /**
+     * 读取上次编译生成的索引, 保留本次没有编译且仍然存在的类
+     */
+    private void merge() {
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", LOCATION);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String bean = line.trim();
+                    if (!bean.isEmpty() && !processed.contains(bean) && exists(bean)) {
+                        beans.add(bean);
+                    }
+                }
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            // 全量编译, 没有上次的索引
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "error in read " + LOCATION + ": " + e);
+        }
+    }
+
+    private boolean exists(String binaryName) {
+        return processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.')) != null;
+    }
+
+    private void write() {
+        merge();
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", LOCATION);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String bean : beans) {
+                    writer.write(bean);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "error in write " + LOCATION + ": " + e);
+        }
+    }
+}
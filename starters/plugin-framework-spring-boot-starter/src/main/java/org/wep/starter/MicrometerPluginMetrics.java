@@ -0,0 +1,142 @@
+package org.wep.starter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.pf4j.PluginState;
+import org.wep.plugins.ControllerProcessor;
+import org.wep.plugins.PluginApplication;
+import org.wep.plugins.PluginInfo;
+import org.wep.plugins.PluginMetrics;
+import org.wep.plugins.PluginResourceAccounting;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把插件生命周期的耗时发布到 Micrometer, 插件相关的指标都带 plugin 和 version 标签
+ * <ul>
+ *     <li>plugin.start.phase: 启动各阶段耗时, phase 标签</li>
+ *     <li>plugin.start / plugin.stop: 启动、停止总耗时</li>
+ *     <li>plugin.stop.destroyed.beans: 停止时销毁的bean数</li>
+ *     <li>plugin.config.bind: 配置绑定耗时, config 标签</li>
+ *     <li>plugin.routes: 已启动插件当前注册的路由数</li>
+ *     <li>plugins: 各状态的插件数, state 标签</li>
+ *     <li>plugin.cpu.time / plugin.allocated.bytes: 开启 plugin.resource-accounting 时插件累计的cpu时间和分配的内存, source 标签</li>
+ * </ul>
+ */
+public class MicrometerPluginMetrics implements PluginMetrics {
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+    /**
+     * 插件id -> 路由数的 gauge, 插件停止后移除
+     */
+    private final Map<String, Meter> routeGauges = new ConcurrentHashMap<>();
+    private volatile ControllerProcessor controllerProcessor;
+    private volatile PluginResourceAccounting resourceAccounting;
+
+    public MicrometerPluginMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void bindTo(PluginApplication application) {
+        this.controllerProcessor = application.getControllerProcessor();
+        this.resourceAccounting = application.getResourceAccounting();
+        for (PluginState state : PluginState.values()) {
+            String name = state.name();
+            Gauge.builder("plugins", application, app -> app.getPluginDescriptors().stream()
+                            .filter(info -> name.equals(info.getState()))
+                            .count())
+                    .tag("state", name)
+                    .description("插件数")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void startPhase(PluginInfo info, StartPhase phase, long nanos) {
+        Timer.builder("plugin.start.phase")
+                .tags(tags(info).and("phase", phase.name().toLowerCase()))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void started(PluginInfo info, long nanos) {
+        Timer.builder("plugin.start")
+                .tags(tags(info))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        ControllerProcessor processor = controllerProcessor;
+        if (processor == null) {
+            return;
+        }
+        String pluginId = info.getPluginId();
+        routeGauges.computeIfAbsent(pluginId, id -> Gauge.builder("plugin.routes", processor, p -> p.getRouteCount(id))
+                .tags(tags(info))
+                .description("插件注册的路由数")
+                .register(registry));
+        registerResourceCounters(info);
+    }
+
+    /**
+     * 累计值按插件id保存, 插件停止后不移除, 重启后继续累加
+     */
+    private void registerResourceCounters(PluginInfo info) {
+        PluginResourceAccounting accounting = resourceAccounting;
+        if (accounting == null || !accounting.isEnabled()) {
+            return;
+        }
+        String pluginId = info.getPluginId();
+        for (PluginResourceAccounting.Source source : PluginResourceAccounting.Source.values()) {
+            Tags tags = tags(info).and("source", source.name().toLowerCase());
+            FunctionCounter.builder("plugin.cpu.time", accounting, a -> a.getCpuNanos(pluginId, source) / 1e9)
+                    .tags(tags)
+                    .baseUnit("seconds")
+                    .description("插件累计的线程cpu时间")
+                    .register(registry);
+            FunctionCounter.builder("plugin.allocated.bytes", accounting, a -> a.getAllocatedBytes(pluginId, source))
+                    .tags(tags)
+                    .baseUnit("bytes")
+                    .description("插件累计分配的内存")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void stopped(PluginInfo info, long nanos, int destroyedBeans) {
+        Tags tags = tags(info);
+        Timer.builder("plugin.stop")
+                .tags(tags)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("plugin.stop.destroyed.beans")
+                .tags(tags)
+                .register(registry)
+                .record(destroyedBeans);
+        Meter gauge = routeGauges.remove(info.getPluginId());
+        if (gauge != null) {
+            registry.remove(gauge);
+        }
+    }
+
+    @Override
+    public void configBound(PluginInfo info, String configFileName, long nanos) {
+        Timer.builder("plugin.config.bind")
+                .tags(tags(info).and("config", configFileName))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Tags tags(PluginInfo info) {
+        String version = info.getVersion();
+        return Tags.of("plugin", info.getPluginId(), "version", version == null ? UNKNOWN : version);
+    }
+}
@@ -1,32 +1,90 @@
 package org.wep.starter;
 
 import org.wep.plugins.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.handler.MappedInterceptor;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Configuration(proxyBeanMethods = false)
 @EnableConfigurationProperties(PluginProperties.class)
 public class PluginApplicationAutoConfiguration {
+    private static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
 
     @Bean
     @ConditionalOnMissingBean(PluginBeanProcessor.class)
     public PluginBeanProcessor processor(PluginApplication pluginApplication, PluginProperties configuration) {
         Set<BeanProcessor> processorSet = new HashSet<>();
-        processorSet.add(new ControllerProcessor(pluginApplication, configuration));
-        processorSet.add(new ConfigProcessor(pluginApplication));
+        processorSet.add(pluginApplication.getControllerProcessor());
+        processorSet.add(pluginApplication.getConfigProcessor());
         return new PluginBeanProcessor(pluginApplication, processorSet);
     }
 
+    /**
+     * 与宿主的 RequestMappingHandlerMapping 一样应用 WebMvcConfigurer 中的拦截器和全局跨域配置
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "plugin", name = "dedicated-handler-mapping", havingValue = "true")
+    @ConditionalOnMissingBean(PluginHandlerMapping.class)
+    public PluginHandlerMapping pluginHandlerMapping(ObjectProvider<WebMvcConfigurer> configurers) {
+        PluginHandlerMapping mapping = new PluginHandlerMapping();
+        mapping.configure(configurers.orderedStream().collect(Collectors.toList()));
+        return mapping;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "plugin", name = "static-resources", havingValue = "true")
+    @ConditionalOnMissingBean(PluginResourceHandlerMapping.class)
+    public PluginResourceHandlerMapping pluginResourceHandlerMapping(PluginApplication pluginApplication) {
+        return new PluginResourceHandlerMapping(pluginApplication);
+    }
+
+    /**
+     * MappedInterceptor 对所有 handler mapping 生效, 包括插件专用的 handler mapping
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "plugin", name = "graceful-stop", havingValue = "true")
+    public MappedInterceptor pluginRequestTracker(PluginApplication pluginApplication) {
+        return new MappedInterceptor(null, pluginApplication.getRequestTracker());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "plugin", name = "resource-accounting", havingValue = "true")
+    public MappedInterceptor pluginResourceInterceptor(PluginApplication pluginApplication) {
+        return new MappedInterceptor(null, new PluginResourceInterceptor(pluginApplication));
+    }
+
+    /**
+     * spring cloud 刷新配置后发布 EnvironmentChangeEvent, 清空插件配置中已解析的占位符
+     */
+    @Bean
+    @ConditionalOnClass(name = ENVIRONMENT_CHANGE_EVENT)
+    public ApplicationListener<ApplicationEvent> pluginEnvironmentChangeListener(PluginApplication pluginApplication) {
+        return event -> {
+            if (ENVIRONMENT_CHANGE_EVENT.equals(event.getClass().getName())) {
+                pluginApplication.getConfigProcessor().refreshEnvironment();
+            }
+        };
+    }
+
     @Bean
     @ConditionalOnMissingBean(PluginApplication.class)
-    public PluginApplication pluginApplication(ApplicationContext applicationContext, PluginProperties configuration) {
+    public PluginApplication pluginApplication(ApplicationContext applicationContext, PluginProperties configuration,
+                                               ObjectProvider<PluginMetrics> metrics) {
         PluginApplication pluginApplication = new PluginApplication(applicationContext, configuration);
+        metrics.ifAvailable(pluginApplication::setMetrics);
         pluginApplication.init();
         return pluginApplication;
     }
@@ -0,0 +1,213 @@
+package org.wep.starter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.MDC;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.wep.plugins.ControllerProcessor;
+import org.wep.plugins.PluginApplication;
+import org.wep.plugins.PluginInfo;
+import org.wep.plugins.state.PluginStateChangeListener;
+import org.wep.plugins.state.StateEvent;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 记录插件路由的请求指标, 宿主的路由不记录, 带 plugin、version、uri(路由模式) 标签
+ * <ul>
+ *     <li>plugin.http.requests: 请求耗时直方图, 另带 method、status、outcome、exception 标签, 计数即请求量</li>
+ *     <li>plugin.http.requests.active: 正在处理的请求数</li>
+ * </ul>
+ * 按 handler 方法从 ControllerProcessor 查所属插件, 每个方法的指标只创建一次;
+ * 请求处理期间把插件id放到 MDC 的 pluginId 中
+ */
+public class PluginHttpMetricsInterceptor implements AsyncHandlerInterceptor, PluginStateChangeListener {
+    public static final String MDC_KEY = "pluginId";
+    private static final String ATTRIBUTE = PluginHttpMetricsInterceptor.class.getName() + ".sample";
+    private static final String UNKNOWN = "unknown";
+    private static final int MAX_STATUS = 600;
+
+    private final MeterRegistry registry;
+    private final PluginApplication pluginApplication;
+    private final ControllerProcessor controllerProcessor;
+    /**
+     * handler 方法 -> 路由的指标, 插件停止后清除, 不持有已停止插件的类
+     */
+    private final ConcurrentHashMap<Method, Route> routes = new ConcurrentHashMap<>();
+
+    public PluginHttpMetricsInterceptor(MeterRegistry registry, PluginApplication pluginApplication) {
+        this.registry = registry;
+        this.pluginApplication = pluginApplication;
+        this.controllerProcessor = pluginApplication.getControllerProcessor();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Object started = request.getAttribute(ATTRIBUTE);
+        if (started instanceof Sample) {
+            // 异步请求再次分派
+            MDC.put(MDC_KEY, ((Sample) started).meters.pluginId);
+            return true;
+        }
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        Method method = ((HandlerMethod) handler).getMethod();
+        String pluginId = controllerProcessor.getPluginId(method);
+        if (pluginId == null) {
+            return true;
+        }
+        Route route = routes.computeIfAbsent(method, m -> new Route(pluginId, tags(pluginId)));
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        RouteMeters meters = route.meters(pattern == null ? UNKNOWN : pattern.toString());
+        meters.active.incrementAndGet();
+        request.setAttribute(ATTRIBUTE, new Sample(meters, System.nanoTime()));
+        MDC.put(MDC_KEY, pluginId);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // 请求线程先释放, 完成时在异步分派中记录
+        MDC.remove(MDC_KEY);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object started = request.getAttribute(ATTRIBUTE);
+        if (!(started instanceof Sample)) {
+            return;
+        }
+        request.removeAttribute(ATTRIBUTE);
+        Sample sample = (Sample) started;
+        try {
+            sample.meters.active.decrementAndGet();
+            sample.meters.timer(request.getMethod(), response.getStatus(), ex)
+                    .record(System.nanoTime() - sample.begin, TimeUnit.NANOSECONDS);
+        } finally {
+            MDC.remove(MDC_KEY);
+        }
+    }
+
+    /**
+     * 插件停止后清除它的路由, 移除正在处理的请求数指标, 耗时指标保留
+     */
+    @Override
+    public void change(StateEvent event) {
+        if (event.getState() != State.STOP && event.getState() != State.UNINSTALL) {
+            return;
+        }
+        String pluginId = event.getPlugin().getPluginId();
+        for (Iterator<Route> it = routes.values().iterator(); it.hasNext(); ) {
+            Route route = it.next();
+            if (route.pluginId.equals(pluginId)) {
+                it.remove();
+                route.patterns.values().forEach(meters -> registry.remove(meters.activeGauge));
+            }
+        }
+    }
+
+    private Tags tags(String pluginId) {
+        String version = pluginApplication.getPluginInfo(pluginId).map(PluginInfo::getVersion).orElse(null);
+        return Tags.of("plugin", pluginId, "version", version == null ? UNKNOWN : version);
+    }
+
+    private static String outcome(int status) {
+        switch (status / 100) {
+            case 1:
+                return "INFORMATIONAL";
+            case 2:
+                return "SUCCESS";
+            case 3:
+                return "REDIRECTION";
+            case 4:
+                return "CLIENT_ERROR";
+            case 5:
+                return "SERVER_ERROR";
+            default:
+                return "UNKNOWN";
+        }
+    }
+
+    private class Route {
+        final String pluginId;
+        final Tags tags;
+        /**
+         * 路由模式 -> 指标, 一个方法通常只有一个路由模式
+         */
+        final Map<String, RouteMeters> patterns = new ConcurrentHashMap<>(2);
+
+        Route(String pluginId, Tags tags) {
+            this.pluginId = pluginId;
+            this.tags = tags;
+        }
+
+        RouteMeters meters(String pattern) {
+            RouteMeters meters = patterns.get(pattern);
+            return meters != null ? meters : patterns.computeIfAbsent(pattern, p -> new RouteMeters(pluginId, tags.and("uri", p)));
+        }
+    }
+
+    private class RouteMeters {
+        final String pluginId;
+        final Tags tags;
+        final AtomicInteger active = new AtomicInteger();
+        final Gauge activeGauge;
+        /**
+         * http method -> 按状态码下标的 timer, 没有异常的请求不用每次构建标签
+         */
+        final Map<String, AtomicReferenceArray<Timer>> timers = new ConcurrentHashMap<>(2);
+
+        RouteMeters(String pluginId, Tags tags) {
+            this.pluginId = pluginId;
+            this.tags = tags;
+            this.activeGauge = Gauge.builder("plugin.http.requests.active", active, AtomicInteger::get)
+                    .tags(tags)
+                    .description("插件正在处理的请求数")
+                    .register(registry);
+        }
+
+        Timer timer(String method, int status, Exception ex) {
+            if (ex != null || status < 0 || status >= MAX_STATUS) {
+                return timer(method, status, ex == null ? "None" : ex.getClass().getSimpleName());
+            }
+            AtomicReferenceArray<Timer> byStatus = timers.computeIfAbsent(method, m -> new AtomicReferenceArray<>(MAX_STATUS));
+            Timer timer = byStatus.get(status);
+            if (timer == null) {
+                timer = timer(method, status, "None");
+                byStatus.set(status, timer);
+            }
+            return timer;
+        }
+
+        private Timer timer(String method, int status, String exception) {
+            return Timer.builder("plugin.http.requests")
+                    .tags(tags)
+                    .tags("method", method, "status", String.valueOf(status), "outcome", outcome(status), "exception", exception)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+
+    private static class Sample {
+        final RouteMeters meters;
+        final long begin;
+
+        Sample(RouteMeters meters, long begin) {
+            this.meters = meters;
+            this.begin = begin;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.wep.starter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.wep.plugins.PluginApplication;
+import org.wep.plugins.PluginMetrics;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.handler.MappedInterceptor;
+
+/**
+ * 存在 MeterRegistry 时记录插件生命周期和插件路由的请求指标, 在 actuator 的 MeterRegistry 自动配置之后处理
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+@AutoConfigureAfter(name = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration"
+})
+public class PluginMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnMissingBean(PluginMetrics.class)
+    public PluginMetrics pluginMetrics(MeterRegistry meterRegistry) {
+        return new MicrometerPluginMetrics(meterRegistry);
+    }
+
+    /**
+     * 插件路由的请求指标, MappedInterceptor 对所有 handler mapping 生效
+     */
+    @Bean
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "plugin", name = "http-metrics", havingValue = "true", matchIfMissing = true)
+    public MappedInterceptor pluginHttpMetricsInterceptor(MeterRegistry meterRegistry, PluginApplication pluginApplication) {
+        PluginHttpMetricsInterceptor interceptor = new PluginHttpMetricsInterceptor(meterRegistry, pluginApplication);
+        pluginApplication.addListener(interceptor, false);
+        return new MappedInterceptor(null, interceptor);
+    }
+}
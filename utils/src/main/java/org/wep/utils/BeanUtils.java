@@ -1,11 +1,15 @@
 package org.wep.utils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.CollectionType;
-import com.fasterxml.jackson.databind.type.MapType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import net.sf.cglib.beans.BeanCopier;
@@ -17,9 +21,16 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class BeanUtils {
 
@@ -27,6 +38,7 @@ public class BeanUtils {
     public static final String ERROR_IN_TO_MAP = "error in toMap";
     private static final String ERROR_IN_TO_COLLECTION = "error in toCollection";
     private static final String ERROR_IN_TO_JSON = "error in toJson";
+    private static final String ERROR_IN_TO_TREE = "error in toTree";
 
     private static final Objenesis objenesis = new ObjenesisStd();
 
@@ -42,12 +54,35 @@ public class BeanUtils {
         yml.registerModule(new JavaTimeModule());
     }
 
+    private static final JavaType MAP_TYPE = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class);
+    private static final ObjectWriter PRETTY_WRITER = objectMapper.writer().withDefaultPrettyPrinter();
+    private static final ClassLoader HOST_CLASS_LOADER = BeanUtils.class.getClassLoader();
+    /**
+     * 按类型缓存构造好的 JavaType、ObjectReader、ObjectWriter
+     * 缓存挂在类型中由插件类加载器加载的类上, 插件卸载后随类一起回收, 不会持有插件的类加载器
+     */
+    private static final ClassValue<Codecs> CODECS = new ClassValue<Codecs>() {
+        @Override
+        protected Codecs computeValue(Class<?> type) {
+            return new Codecs();
+        }
+    };
+    /**
+     * 按源类型和目标类型缓存 BeanCopier, 和 CODECS 一样挂在插件加载的一方
+     */
+    private static final ClassValue<Copiers> COPIERS = new ClassValue<Copiers>() {
+        @Override
+        protected Copiers computeValue(Class<?> type) {
+            return new Copiers();
+        }
+    };
+
     public static String toJson(Object bean) {
         if (bean == null) {
             return null;
         }
         try {
-            return objectMapper.writeValueAsString(bean);
+            return writer(bean.getClass()).writeValueAsString(bean);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_JSON, e);
         }
@@ -55,7 +90,10 @@ public class BeanUtils {
     }
 
     public static String toJson2(Object bean) throws JsonProcessingException {
-        return objectMapper.writeValueAsString(bean);
+        if (bean == null) {
+            return objectMapper.writeValueAsString(null);
+        }
+        return writer(bean.getClass()).writeValueAsString(bean);
     }
 
     public static String prettyJson(Object bean) {
@@ -63,7 +101,7 @@ public class BeanUtils {
             return null;
         }
         try {
-            return objectMapper.writer().withDefaultPrettyPrinter().writeValueAsString(bean);
+            return PRETTY_WRITER.writeValueAsString(bean);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_JSON, e);
         }
@@ -71,9 +109,9 @@ public class BeanUtils {
     }
 
     private static <T> Collection<T> toCollection(String json, Class<T> clz, Class<? extends Collection> collectionType) {
-        CollectionType listType = objectMapper.getTypeFactory().constructCollectionType(collectionType, clz);
+        JavaType listType = collectionType(collectionType, getJavaType(clz));
         try {
-            return objectMapper.readValue(json, listType);
+            return reader(listType).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_COLLECTION, e);
         }
@@ -81,9 +119,9 @@ public class BeanUtils {
     }
 
     private static <T> Collection<T> toCollection(String json, JavaType javaType, Class<? extends Collection> collectionType) {
-        CollectionType listType = objectMapper.getTypeFactory().constructCollectionType(collectionType, javaType);
+        JavaType listType = collectionType(collectionType, javaType);
         try {
-            return objectMapper.readValue(json, listType);
+            return reader(listType).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_COLLECTION, e);
         }
@@ -115,9 +153,8 @@ public class BeanUtils {
     }
 
     public static Map<String, Object> toMap(String json) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class);
         try {
-            return objectMapper.readValue(json, mapType);
+            return reader(MAP_TYPE).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -125,9 +162,9 @@ public class BeanUtils {
     }
 
     public static <K, V> Map<K, V> toMap(String json, Class<K> key, Class<V> value) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value);
+        JavaType mapType = mapType(getJavaType(key), getJavaType(value));
         try {
-            return objectMapper.readValue(json, mapType);
+            return reader(mapType).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -135,9 +172,8 @@ public class BeanUtils {
     }
 
     public static Map<String, Object> toYamlMap(String yaml) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class);
         try {
-            return yml.readValue(yaml, mapType);
+            return yamlReader(MAP_TYPE).readValue(yaml);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -145,9 +181,9 @@ public class BeanUtils {
     }
 
     public static <K, V> Map<K, V> toYamlMap(String yaml, Class<K> key, Class<V> value) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value);
+        JavaType mapType = mapType(getJavaType(key), getJavaType(value));
         try {
-            return yml.readValue(yaml, mapType);
+            return yamlReader(mapType).readValue(yaml);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -155,9 +191,8 @@ public class BeanUtils {
     }
 
     public static Map<String, Object> toMap(File file) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class);
         try {
-            return objectMapper.readValue(file, mapType);
+            return reader(MAP_TYPE).readValue(file);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -165,9 +200,9 @@ public class BeanUtils {
     }
 
     public static <K, V> Map<K, V> toMap(File file, Class<K> key, Class<V> value) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value);
+        JavaType mapType = mapType(getJavaType(key), getJavaType(value));
         try {
-            return objectMapper.readValue(file, mapType);
+            return reader(mapType).readValue(file);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -175,9 +210,9 @@ public class BeanUtils {
     }
 
     public static <K, V> Map<K, V> toMap(String json, JavaType key, JavaType value) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value);
+        JavaType mapType = mapType(key, value);
         try {
-            return objectMapper.readValue(json, mapType);
+            return reader(mapType).readValue(json);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_BEAN, e);
         }
@@ -185,9 +220,8 @@ public class BeanUtils {
     }
 
     public static Map<String, Object> toYamlMap(File yaml) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class);
         try {
-            return yml.readValue(yaml, mapType);
+            return yamlReader(MAP_TYPE).readValue(yaml);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -195,9 +229,9 @@ public class BeanUtils {
     }
 
     public static <K, V> Map<K, V> toYamlMap(File yaml, Class<K> key, Class<V> value) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value);
+        JavaType mapType = mapType(getJavaType(key), getJavaType(value));
         try {
-            return yml.readValue(yaml, mapType);
+            return yamlReader(mapType).readValue(yaml);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -205,9 +239,8 @@ public class BeanUtils {
     }
 
     public static Map<String, Object> toMap(URL url) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class);
         try {
-            return objectMapper.readValue(url, mapType);
+            return reader(MAP_TYPE).readValue(url);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -215,9 +248,9 @@ public class BeanUtils {
     }
 
     public static <K, V> Map<K, V> toMap(URL url, Class<K> key, Class<V> value) {
-        MapType mapType = objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value);
+        JavaType mapType = mapType(getJavaType(key), getJavaType(value));
         try {
-            return objectMapper.readValue(url, mapType);
+            return reader(mapType).readValue(url);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_MAP, e);
         }
@@ -225,12 +258,12 @@ public class BeanUtils {
     }
 
     public static <T> T toBean2(URL url, Class<T> clz) throws IOException {
-        return objectMapper.readValue(url, clz);
+        return reader(clz).readValue(url);
     }
 
     public static <T> T toBean(URL url, Class<T> clz) {
         try {
-            return objectMapper.readValue(url, clz);
+            return reader(clz).readValue(url);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_BEAN, e);
         }
@@ -238,7 +271,7 @@ public class BeanUtils {
     }
 
     public static <T> T toBean2(String json, JavaType type) throws JsonProcessingException {
-        return objectMapper.readValue(json, type);
+        return reader(type).readValue(json);
     }
 
     public static <T> T toBean(String json, JavaType type) {
@@ -246,7 +279,7 @@ public class BeanUtils {
             return null;
         }
         try {
-            return objectMapper.readValue(json, type);
+            return reader(type).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_BEAN, e);
         }
@@ -254,11 +287,11 @@ public class BeanUtils {
     }
 
     public static <T> T toBean2(String json, Class<T> clz) throws JsonProcessingException {
-        return objectMapper.readValue(json, clz);
+        return reader(clz).readValue(json);
     }
 
     public static <T> T toBean2(InputStream in, Class<T> clz) throws IOException {
-        return objectMapper.readValue(in, clz);
+        return reader(clz).readValue(in);
     }
 
     public static <T> T toBean(String json, Class<T> clz) {
@@ -266,7 +299,7 @@ public class BeanUtils {
             return null;
         }
         try {
-            return objectMapper.readValue(json, clz);
+            return reader(clz).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_BEAN, e);
         }
@@ -274,7 +307,7 @@ public class BeanUtils {
     }
 
     public static <T> T toBean2(File json, Class<T> clz) throws IOException {
-        return objectMapper.readValue(json, clz);
+        return reader(clz).readValue(json);
     }
 
     public static <T> T toBean(File json, Class<T> clz) {
@@ -282,7 +315,7 @@ public class BeanUtils {
             return null;
         }
         try {
-            return objectMapper.readValue(json, clz);
+            return reader(clz).readValue(json);
         } catch (IOException e) {
             logger.error(ERROR_IN_TO_BEAN, e);
         }
@@ -290,7 +323,7 @@ public class BeanUtils {
     }
 
     public static <T> T toBean2(String json, TypeReference<T> type) throws JsonProcessingException {
-        return objectMapper.readValue(json, type);
+        return reader(type).readValue(json);
     }
 
     public static <T> T toBean(String json, TypeReference<T> type) {
@@ -298,7 +331,7 @@ public class BeanUtils {
             return null;
         }
         try {
-            return objectMapper.readValue(json, type);
+            return reader(type).readValue(json);
         } catch (JsonProcessingException e) {
             logger.error(ERROR_IN_TO_BEAN, e);
         }
@@ -306,26 +339,173 @@ public class BeanUtils {
     }
 
     public static <T> T yml(URL url, Class<T> clz) throws IOException {
-        return yml.readValue(url, clz);
+        return yamlReader(getJavaType(clz)).readValue(url);
     }
 
     public static <T> T yml(File ymlFile, Class<T> clz) throws IOException {
-        return yml.readValue(ymlFile, clz);
+        return yamlReader(getJavaType(clz)).readValue(ymlFile);
     }
 
     public static <T> T yml(InputStream in, Class<T> clz) throws IOException {
-        return yml.readValue(in, clz);
+        return yamlReader(getJavaType(clz)).readValue(in);
     }
 
     public static <T> T yml(String ymlContent, Class<T> clz) throws IOException {
-        return yml.readValue(ymlContent, clz);
+        return yamlReader(getJavaType(clz)).readValue(ymlContent);
+    }
+
+    /**
+     * 逐个解析输入中的元素, 根节点是数组时遍历数组元素, 否则遍历连续的根节点
+     * 内存中只保留当前元素, 关闭迭代器时关闭输入流
+     */
+    public static <T> MappingIterator<T> iterator(InputStream in, Class<T> clz) throws IOException {
+        return reader(clz).readValues(in);
+    }
+
+    public static <T> MappingIterator<T> yamlIterator(InputStream in, Class<T> clz) throws IOException {
+        return yamlReader(getJavaType(clz)).readValues(in);
+    }
+
+    /**
+     * 懒解析的 Stream, 使用完需要关闭(try-with-resources), 关闭时关闭输入流
+     * 元素解析失败时抛出 RuntimeJsonMappingException
+     */
+    public static <T> Stream<T> stream(InputStream in, Class<T> clz) throws IOException {
+        return stream(iterator(in, clz));
+    }
+
+    public static <T> Stream<T> stream(Path json, Class<T> clz) throws IOException {
+        InputStream in = Files.newInputStream(json);
+        try {
+            return stream(in, clz);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public static <T> Stream<T> yamlStream(InputStream in, Class<T> clz) throws IOException {
+        return stream(yamlIterator(in, clz));
+    }
+
+    public static <T> Stream<T> yamlStream(Path yaml, Class<T> clz) throws IOException {
+        InputStream in = Files.newInputStream(yaml);
+        try {
+            return yamlStream(in, clz);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static <T> Stream<T> stream(MappingIterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        iterator.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * 以 json 数组的形式逐个写出元素, 关闭 SequenceWriter 时写出数组结尾, 不关闭 out
+     */
+    public static SequenceWriter arrayWriter(OutputStream out, Class<?> clz) throws IOException {
+        return writer(clz).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValuesAsArray(out);
+    }
+
+    /**
+     * @return 写出的元素个数
+     */
+    public static <T> long writeArray(OutputStream out, Class<T> clz, Iterator<? extends T> values) throws IOException {
+        long count = 0;
+        try (SequenceWriter writer = arrayWriter(out, clz)) {
+            while (values.hasNext()) {
+                writer.write(values.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static <T> long writeArray(Path json, Class<T> clz, Iterator<? extends T> values) throws IOException {
+        try (OutputStream out = Files.newOutputStream(json)) {
+            return writeArray(out, clz, values);
+        }
+    }
+
+    public static JsonNode toTree(File json) {
+        try {
+            return emptyIfMissing(objectMapper.readTree(json));
+        } catch (IOException e) {
+            logger.error(ERROR_IN_TO_TREE, e);
+        }
+        return objectMapper.createObjectNode();
+    }
+
+    public static JsonNode toYamlTree(File yaml) {
+        try {
+            return emptyIfMissing(yml.readTree(yaml));
+        } catch (IOException e) {
+            logger.error(ERROR_IN_TO_TREE, e);
+        }
+        return objectMapper.createObjectNode();
+    }
+
+    private static JsonNode emptyIfMissing(JsonNode node) {
+        return node == null || node.isMissingNode() || node.isNull() ? objectMapper.createObjectNode() : node;
+    }
+
+    public static <T> T toBean(JsonNode node, Class<T> clz) {
+        if (node == null) {
+            return null;
+        }
+        try {
+            return reader(clz).readValue(node);
+        } catch (IOException e) {
+            logger.error(ERROR_IN_TO_BEAN, e);
+        }
+        return null;
+    }
+
+    /**
+     * 用 node 中的属性更新已有的 bean, 不创建新对象
+     *
+     * @param node
+     * @param bean
+     * @param <T>
+     * @return
+     */
+    public static <T> T update(JsonNode node, T bean) {
+        Objects.requireNonNull(bean, "bean must not be null");
+        if (node == null) {
+            return bean;
+        }
+        try {
+            return objectMapper.readerForUpdating(bean).readValue(node);
+        } catch (IOException e) {
+            logger.error(ERROR_IN_TO_BEAN, e);
+        }
+        return bean;
+    }
+
+    public static Map<String, Object> toMap(JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return Collections.emptyMap();
+        }
+        return objectMapper.convertValue(node, MAP_TYPE);
     }
 
     public static JavaType getJavaType(Class<?> clz) {
-        return objectMapper.getTypeFactory().constructType(clz);
+        return CODECS.get(clz).types.computeIfAbsent(clz, k -> objectMapper.getTypeFactory().constructType(clz));
     }
 
     public static JavaType getJavaType(Type type) {
+        if (type instanceof Class) {
+            return getJavaType((Class<?>) type);
+        }
         return objectMapper.getTypeFactory().constructType(type);
     }
 
@@ -333,6 +513,77 @@ public class BeanUtils {
         return objectMapper.getTypeFactory().constructParametricType(collectionClass, elementClasses);
     }
 
+    private static JavaType collectionType(Class<? extends Collection> collectionClass, JavaType element) {
+        return codecs(element).types.computeIfAbsent(Arrays.asList(collectionClass, element),
+                k -> objectMapper.getTypeFactory().constructCollectionType(collectionClass, element));
+    }
+
+    private static JavaType mapType(JavaType key, JavaType value) {
+        Class<?> owner = pluginClass(value);
+        if (owner == null) {
+            owner = owner(key);
+        }
+        return CODECS.get(owner).types.computeIfAbsent(Arrays.asList(HashMap.class, key, value),
+                k -> objectMapper.getTypeFactory().constructMapType(HashMap.class, key, value));
+    }
+
+    /**
+     * TypeReference 一般是匿名子类, 按子类缓存其泛型类型
+     */
+    private static JavaType typeOf(TypeReference<?> type) {
+        return CODECS.get(type.getClass()).types.computeIfAbsent(type.getType(), k -> getJavaType(type.getType()));
+    }
+
+    public static ObjectReader reader(Class<?> clz) {
+        return reader(getJavaType(clz));
+    }
+
+    public static ObjectReader reader(JavaType type) {
+        return codecs(type).readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    private static ObjectReader reader(TypeReference<?> type) {
+        return reader(typeOf(type));
+    }
+
+    public static ObjectReader yamlReader(JavaType type) {
+        return codecs(type).yamlReaders.computeIfAbsent(type, yml::readerFor);
+    }
+
+    public static ObjectWriter writer(Class<?> clz) {
+        JavaType type = getJavaType(clz);
+        return codecs(type).writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+
+    private static Codecs codecs(JavaType type) {
+        return CODECS.get(owner(type));
+    }
+
+    /**
+     * @return 类型中第一个由插件类加载器加载的类, 都是宿主的类时返回原始类型
+     */
+    private static Class<?> owner(JavaType type) {
+        Class<?> owner = pluginClass(type);
+        return owner == null ? type.getRawClass() : owner;
+    }
+
+    private static Class<?> pluginClass(JavaType type) {
+        if (type == null) {
+            return null;
+        }
+        Class<?> raw = type.getRawClass();
+        if (isPluginClass(raw)) {
+            return raw;
+        }
+        for (int i = 0; i < type.containedTypeCount(); i++) {
+            Class<?> contained = pluginClass(type.containedType(i));
+            if (contained != null) {
+                return contained;
+            }
+        }
+        return pluginClass(type.getContentType());
+    }
+
     /**
      * 使用asm拷贝对象属性
      *
@@ -344,12 +595,56 @@ public class BeanUtils {
     public static <T> T copy(T source, T target) {
         Objects.requireNonNull(source, "source must not be null");
         Objects.requireNonNull(target, "target must not be null");
-        BeanCopier copier = BeanCopier.create(source.getClass(), target.getClass(), false);
+        Class<?> sourceClass = source.getClass();
+        Class<?> targetClass = target.getClass();
+        BeanCopier copier;
+        if (!isPluginClass(targetClass)) {
+            copier = COPIERS.get(sourceClass).targets.computeIfAbsent(targetClass, t -> BeanCopier.create(sourceClass, t, false));
+        } else if (!isPluginClass(sourceClass)) {
+            copier = COPIERS.get(targetClass).sources.computeIfAbsent(sourceClass, t -> copier(t, targetClass));
+        } else if (sourceClass.getClassLoader() == targetClass.getClassLoader()) {
+            copier = COPIERS.get(sourceClass).targets.computeIfAbsent(targetClass, t -> BeanCopier.create(sourceClass, t, false));
+        } else {
+            // 两个插件之间拷贝不缓存, 避免一个插件持有另一个插件的类加载器
+            copier = BeanCopier.create(sourceClass, targetClass, false);
+        }
         copier.copy(source, target, null);
         return target;
     }
 
+    /**
+     * 生成的拷贝类定义在目标类型的类加载器中, 宿主类型拷贝到插件类型时不会让宿主类加载器引用插件的类
+     */
+    private static BeanCopier copier(Class<?> sourceClass, Class<?> targetClass) {
+        BeanCopier.Generator generator = new BeanCopier.Generator();
+        generator.setSource(sourceClass);
+        generator.setTarget(targetClass);
+        generator.setUseConverter(false);
+        generator.setClassLoader(targetClass.getClassLoader());
+        return generator.create();
+    }
+
+    private static boolean isPluginClass(Class<?> clz) {
+        ClassLoader classLoader = clz.getClassLoader();
+        return classLoader != null && classLoader != HOST_CLASS_LOADER;
+    }
+
     public static <T> T instance(Class<T> clz) {
         return objenesis.newInstance(clz);
     }
+
+    /**
+     * 缓存所在的类作为源类型时按目标类型查找, 作为目标类型时按源类型查找
+     */
+    private static class Copiers {
+        private final Map<Class<?>, BeanCopier> targets = new ConcurrentHashMap<>();
+        private final Map<Class<?>, BeanCopier> sources = new ConcurrentHashMap<>();
+    }
+
+    private static class Codecs {
+        private final Map<Object, JavaType> types = new ConcurrentHashMap<>();
+        private final Map<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+        private final Map<JavaType, ObjectReader> yamlReaders = new ConcurrentHashMap<>();
+        private final Map<JavaType, ObjectWriter> writers = new ConcurrentHashMap<>();
+    }
 }